@@ -0,0 +1,51 @@
+package candles.integration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static candles.Application.OBJECT_MAPPER;
+
+// parsing done by ApiListener.onTextMessage, trades are consumed by the blackhole instead of the market
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TickParserBenchmark {
+
+    @Param({"1", "50"})
+    int ticksPerFrame;
+
+    private String frame;
+    private TickParser parser;
+
+    @Setup
+    public void setUp() {
+        final var data = new StringBuilder();
+        for (var i = 0; i < ticksPerFrame; i++) {
+            data.append(i == 0 ? "" : ",")
+                .append("{\"c\":null,\"p\":").append(7296.89 + i)
+                .append(",\"s\":\"BINANCE:BTCUSDT\",\"t\":").append(1575526691134L + i)
+                .append(",\"v\":0.011467}");
+        }
+        frame = "{\"data\":[" + data + "],\"type\":\"trade\"}";
+        parser = new TickParser(OBJECT_MAPPER.getFactory());
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        parser.parse(frame, (stockName, epochMillis, price) -> {
+            blackhole.consume(stockName);
+            blackhole.consume(epochMillis);
+            blackhole.consume(price);
+        });
+    }
+}
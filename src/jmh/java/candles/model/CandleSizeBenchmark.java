@@ -0,0 +1,49 @@
+package candles.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CandleSizeBenchmark {
+
+    @Param({"1_SECONDS", "5_SECONDS", "15_MINUTES", "1_HOURS", "1_DAYS"})
+    String size;
+
+    private CandleSize candleSize;
+    private LocalDateTime time;
+    private long timeMillis;
+    private long nanos;
+
+    @Setup
+    public void setUp() {
+        final var parts = size.split("_");
+        candleSize = new CandleSize(Integer.parseInt(parts[0]), ChronoUnit.valueOf(parts[1]));
+        time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+        timeMillis = CandleStore.toEpochMillis(time);
+    }
+
+    @Benchmark
+    public LocalDateTime calculateAbsoluteStartDate() {
+        nanos += 7_777_777;
+        return candleSize.calculateAbsoluteStartDate(time.plusNanos(nanos));
+    }
+
+    // the bucketing done for every trade
+    @Benchmark
+    public long startMillis() {
+        timeMillis += 7;
+        return candleSize.startMillis(timeMillis);
+    }
+}
@@ -0,0 +1,77 @@
+package candles.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+// getCandles while shard writers aggregate trades fed by the single producer
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MarketManagerBenchmark {
+
+    private static final CandleSize CANDLE_SIZE = new CandleSize(1, SECONDS);
+    private static final long START_MILLIS = CandleStore.toEpochMillis(LocalDateTime.of(2022, 12, 12, 12, 12, 12));
+    private static final int SYMBOLS = 100;
+    private static final int HISTORY = 10_000;
+
+    private MarketManager market;
+    private String[] stockNames;
+    private long price;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        market = new MarketManager(List.of(CANDLE_SIZE, new CandleSize(1, MINUTES)), 4);
+        market.start();
+        stockNames = new String[SYMBOLS];
+        price = ScaledPrices.encode(new BigDecimal("100.25"));
+        for (var i = 0; i < SYMBOLS; i++) {
+            stockNames[i] = "SYMBOL" + i;
+        }
+        for (var second = 0; second < HISTORY; second++) {
+            for (var stockName : stockNames) {
+                market.processMarketEvent(stockName, START_MILLIS + second * 1000L, price);
+            }
+        }
+        sequence = (long) HISTORY * 1000;
+    }
+
+    // writers of a trial would keep running through the following ones
+    @TearDown
+    public void tearDown() {
+        market.stop();
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public void processMarketEvent() {
+        final var i = sequence++;
+        market.processMarketEvent(stockNames[(int) (i % SYMBOLS)], START_MILLIS + i, price);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(3)
+    public Optional<CandleSeries> getCandles() {
+        return market.getCandles(stockNames[ThreadLocalRandom.current().nextInt(SYMBOLS)], CANDLE_SIZE, new CandleQuery(Long.MIN_VALUE, Long.MAX_VALUE, 100));
+    }
+}
@@ -0,0 +1,66 @@
+package candles.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.ChronoUnit.HOURS;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+// aggregation done by a shard writer: trades are spread over the symbols, candles are closed once a second of trades
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StockBenchmark {
+
+    private static final List<CandleSize> CANDLE_SIZES = List.of(
+        new CandleSize(1, SECONDS), new CandleSize(5, SECONDS), new CandleSize(1, MINUTES), new CandleSize(1, HOURS));
+    private static final long START_MILLIS = CandleStore.toEpochMillis(LocalDateTime.of(2022, 12, 12, 12, 12, 12));
+    private static final int TRADES_PER_SECOND = 1000;
+
+    @Param({"1", "100", "10000"})
+    int symbols;
+
+    private Stock[] stocks;
+    private Trade[] trades;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        stocks = new Stock[symbols];
+        for (var i = 0; i < symbols; i++) {
+            stocks[i] = new Stock("SYMBOL" + i, CANDLE_SIZES);
+        }
+        trades = new Trade[TRADES_PER_SECOND];
+        for (var i = 0; i < trades.length; i++) {
+            trades[i] = new Trade(null, START_MILLIS, ScaledPrices.encode(new BigDecimal(100_00 + i % 200).movePointLeft(2)));
+        }
+    }
+
+    @Benchmark
+    public void addTrade() {
+        final var i = sequence++;
+        final var stock = stocks[(int) (i % symbols)];
+        final var trade = trades[(int) (i % TRADES_PER_SECOND)];
+        trade.stockName = stock.stockName;
+        trade.timeMillis = START_MILLIS + i;
+        stock.addTrade(trade);
+        if (i % TRADES_PER_SECOND == TRADES_PER_SECOND - 1) {
+            final var now = trade.timeMillis;
+            for (var s : stocks) {
+                s.closeCandles(now);
+            }
+        }
+    }
+}
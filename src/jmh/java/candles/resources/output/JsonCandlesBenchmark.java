@@ -0,0 +1,68 @@
+package candles.resources.output;
+
+import candles.model.CandleSeries;
+import candles.model.CandleSize;
+import candles.model.Stock;
+import candles.model.Trade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static candles.Application.DEFAULT_TIME_ZONE_OFFSET;
+import static candles.Application.OBJECT_MAPPER;
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+// the response body written by JsonCandles binding, by the streaming writer and from the cache used by the resource
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonCandlesBenchmark {
+
+    private static final CandleSize CANDLE_SIZE = new CandleSize(1, SECONDS);
+
+    @Param({"10", "1000"})
+    int candlesAmount;
+
+    private CandleSeries candles;
+    private CandlesJsonCache cache;
+
+    @Setup
+    public void setUp() {
+        final var stock = new Stock("BINANCE:BTCUSDT", List.of(CANDLE_SIZE));
+        final var start = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+        for (var i = 0; i <= candlesAmount; i++) {
+            stock.addTrade(new Trade(stock.stockName, start.plusSeconds(i), new BigDecimal(7296_89 + i).movePointLeft(2)));
+        }
+        stock.closeCandles(start.plusSeconds(candlesAmount + 1).toInstant(DEFAULT_TIME_ZONE_OFFSET).toEpochMilli());
+        stock.publish();
+        candles = stock.getCandles(CANDLE_SIZE);
+        cache = new CandlesJsonCache(CandlesJsonCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    @Benchmark
+    public void jsonCandles() throws IOException {
+        OBJECT_MAPPER.writeValue(OutputStream.nullOutputStream(), new JsonCandles(candles, CANDLE_SIZE, "BINANCE:BTCUSDT"));
+    }
+
+    @Benchmark
+    public void candlesJsonWriter() throws IOException {
+        CandlesJsonWriter.write(candles, "BINANCE:BTCUSDT", OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void candlesJsonCache() throws IOException {
+        cache.write(candles, "BINANCE:BTCUSDT", OutputStream.nullOutputStream());
+    }
+}
@@ -1,9 +1,21 @@
 package candles;
 
+import candles.backfill.Backfill;
 import candles.config.Config;
 import candles.integration.ApiListener;
+import candles.metrics.Metrics;
 import candles.model.MarketManager;
+import candles.model.MarketSnapshot;
+import candles.persistence.CandleSegments;
+import candles.persistence.MarketSnapshots;
+import candles.persistence.TradeJournal;
+import candles.resources.BatchCandleResource;
 import candles.resources.CandleResource;
+import candles.resources.CandleStreamResource;
+import candles.resources.HttpThreads;
+import candles.resources.MetricsResource;
+import candles.resources.output.CandlesJsonCache;
+import candles.resources.stream.CandleSubscriptions;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.neovisionaries.ws.client.WebSocket;
 import com.neovisionaries.ws.client.WebSocketException;
@@ -13,8 +25,15 @@ import org.slf4j.LoggerFactory;
 import spark.Spark;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static candles.config.ConfigLoader.loadLocalConfigFrom;
 import static com.fasterxml.jackson.core.JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN;
@@ -45,6 +64,10 @@ public class Application {
         final var configPath = args[args.length - 1];
         try {
             final var config = loadLocalConfigFrom(configPath);
+            if (args.length > 1 && args[0].equals("backfill")) {//backfill <tick files or directories...> <config>
+                backfill(config, Arrays.asList(args).subList(1, args.length - 1));
+                return;
+            }
             start(config);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -52,8 +75,12 @@ public class Application {
     }
 
     public static void start(Config config, ApiListener apiListener, MarketManager market) {
+        start(config, apiListener, market, new Metrics());
+    }
+
+    public static void start(Config config, ApiListener apiListener, MarketManager market, Metrics metrics) {
         try {
-            initializeHttpResources(config, market);
+            initializeHttpResources(config, market, metrics);
 
             final var socket = initializeWebSocet(config, apiListener);
             socket.connect();//blocks thread
@@ -63,9 +90,75 @@ public class Application {
     }
 
     public static void start(Config config) {
-        final var market = new MarketManager(config.candleSizes, config.threadPoolSize);
-        final var listener = new ApiListener(market);
-        start(config, listener, market);
+        final var tier = config.segmentsDirectory == null ? null : new CandleSegments(Path.of(config.segmentsDirectory), config.sealAfter);
+        final var market = new MarketManager(config.candleSizes, config.retention, tier, config.shards, config.ingestQueue);
+        market.cacheDerivedCandles(config.derivedCandlesCache);
+        market.closeCandles(config.closeDelay, config.lateTrades);
+        final var metrics = new Metrics();
+        market.instrument(metrics);
+        final var snapshots = config.journalDirectory == null || config.snapshotsDirectory == null ? null : new MarketSnapshots(Path.of(config.snapshotsDirectory));
+        if (snapshots != null) {
+            snapshots.lock();
+        }
+        final var sequence = snapshots == null ? 0 : restoreSnapshot(snapshots, market);
+        // replayed trades are aggregated by running shards, so rings do not have to hold the whole journal
+        market.start();
+        final var journal = config.journalDirectory == null ? null : openJournal(config, market, sequence);
+        // journaled trades are replayed in full, overload is handled for trades received from the feed only
+        market.ingestPolicy(config.ingestPolicy);
+        if (snapshots != null) {
+            snapshots.start(market, journal, config.snapshotInterval);
+        }
+        final var listener = new ApiListener(market, journal, config.priceScales, metrics);
+        start(config, listener, market, metrics);
+    }
+
+    // builds candles from recorded tick files into the snapshot the service restores on startup. they are merged
+    // into the latest snapshot at its sequence, so its stocks are kept and the journal is replayed on top as before.
+    // the service has to be stopped, a backfill refuses the snapshots directory of a running one
+    public static void backfill(Config config, List<String> inputs) {
+        if (config.snapshotsDirectory == null) {
+            throw new RuntimeException("tried to backfill without snapshots directory");
+        }
+        final var files = new ArrayList<Path>();
+        for (var input : inputs) {
+            final var path = Path.of(input);
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (var found = Files.walk(path)) {
+                files.addAll(found.filter(Files::isRegularFile).collect(Collectors.toList()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("unable to list tick files in %s", path), e);
+            }
+        }
+        final var snapshots = new MarketSnapshots(Path.of(config.snapshotsDirectory));
+        snapshots.lock();
+        final var state = snapshots.readLatest().orElse(new MarketSnapshot(0, List.of()));
+        final var backfill = new Backfill(config.candleSizes, config.retention, Runtime.getRuntime().availableProcessors());
+        final var backfilled = backfill.run(files, System.currentTimeMillis(), state.sequence);
+        snapshots.write(backfill.merge(state, backfilled));
+    }
+
+    // returns sequence of the first trade not included into the restored state
+    private static long restoreSnapshot(MarketSnapshots snapshots, MarketManager market) {
+        final var start = System.nanoTime();
+        final var snapshot = snapshots.readLatest();
+        snapshot.ifPresent(market::restore);
+        LOG.info("restored {} stocks in {} ms", snapshot.map(s -> s.stocks.size()).orElse(0), (System.nanoTime() - start) / 1_000_000);
+        return snapshot.map(s -> s.sequence).orElse(0L);
+    }
+
+    // trades of the previous runs following the restored state are replayed before new ones are received.
+    // shards close candles by trade time, so replayed trades close them as they did when they were received
+    private static TradeJournal openJournal(Config config, MarketManager market, long fromSequence) {
+        final var journal = TradeJournal.open(Path.of(config.journalDirectory), TradeJournal.DEFAULT_SEGMENT_SIZE, config.journalFlushMillis);
+        final var start = System.nanoTime();
+        final var replayed = journal.replay(fromSequence, market::processMarketEvent) - fromSequence;
+        final var millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOG.info("replayed {} trades in {} ms ({} trades/s)", replayed, millis, replayed * 1000 / millis);
+        return journal;
     }
 
     private static WebSocket initializeWebSocet(Config config, ApiListener apiListener) throws IOException {
@@ -78,10 +171,25 @@ public class Application {
         return socket;
     }
 
-    private static void initializeHttpResources(Config config, MarketManager market) {
+    private static void initializeHttpResources(Config config, MarketManager market, Metrics metrics) {
+        final var threads = config.httpThreads == HttpThreads.Model.VIRTUAL ? HttpThreads.virtual()
+            : HttpThreads.pool(config.httpMaxThreads, config.httpMinThreads, config.httpQueue, config.httpIdleTimeout);
+        HttpThreads.install(threads);
+        HttpThreads.instrument(threads, metrics);
         Spark.port(config.port);
-        final var candleResource = new CandleResource(market);
+        final var cache = new CandlesJsonCache(config.responseCacheBytes);
+        cache.instrument(metrics);
+        final var candleResource = new CandleResource(market, cache, metrics);
         candleResource.registerRoutes();
+        final var batchResource = new BatchCandleResource(market, cache, config.batchParallelism, metrics);
+        batchResource.registerRoutes();
+        final var subscriptions = new CandleSubscriptions(market, config.streamInterval, config.streamBuffer);
+        subscriptions.instrument(metrics);
+        subscriptions.start();
+        final var streamResource = new CandleStreamResource(subscriptions, config.streamMaxClients);
+        streamResource.registerRoutes();
+        final var metricsResource = new MetricsResource(metrics);
+        metricsResource.registerRoutes();
         registerShutdownHook();
         Spark.awaitInitialization();
     }
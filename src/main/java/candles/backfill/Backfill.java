@@ -0,0 +1,264 @@
+package candles.backfill;
+
+import candles.integration.TickParser;
+import candles.integration.TradeConsumer;
+import candles.model.CandleSeries;
+import candles.model.CandleSize;
+import candles.model.CandleStore;
+import candles.model.MarketSnapshot;
+import candles.model.Retention;
+import candles.model.Stock;
+import candles.model.StockSnapshot;
+import candles.model.Trade;
+import candles.persistence.TradeJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static candles.Application.OBJECT_MAPPER;
+import static java.lang.String.format;
+
+// builds candles from recorded tick files offline. files are read in parallel, ticks are grouped by symbol, sorted
+// by time and every symbol is aggregated by its own fork-join task with the same Stock logic the service uses.
+// feed frames recorded one per line (.ndjson) and journal segments (.journal) are supported
+public class Backfill {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Backfill.class);
+
+    private final List<CandleSize> candleUnits;
+    private final Map<CandleSize, Retention> retention;
+    private final ForkJoinPool pool;
+
+    public Backfill(List<CandleSize> candleUnits, Map<CandleSize, Retention> retention, int parallelism) {
+        this.candleUnits = candleUnits;
+        this.retention = retention;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    // candles which buckets have ended by closeUntilMillis are closed, the snapshot is taken at the given sequence
+    public MarketSnapshot run(List<Path> files, long closeUntilMillis, long sequence) {
+        final var start = System.nanoTime();
+        final var ticks = read(files);
+        final var read = System.nanoTime();
+
+        final var symbols = ticks.keySet().toArray(new String[0]);
+        final var stocks = pool.invoke(new AggregateTask(symbols, 0, symbols.length, ticks, closeUntilMillis));
+        final var aggregated = System.nanoTime();
+
+        final var ticksAmount = ticks.values().stream().mapToLong(t -> t.size).sum();
+        final var cores = pool.getParallelism();
+        LOG.info("backfilled {} ticks of {} symbols from {} files: read in {} ms, aggregated in {} ms",
+            ticksAmount, symbols.length, files.size(), (read - start) / 1_000_000, (aggregated - read) / 1_000_000);
+        LOG.info("aggregation throughput {} ticks/s/core, overall {} ticks/s/core on {} cores",
+            perSecondPerCore(ticksAmount, aggregated - read, cores), perSecondPerCore(ticksAmount, aggregated - start, cores), cores);
+        return new MarketSnapshot(sequence, stocks);
+    }
+
+    // adds backfilled candles to the state, which is kept at its own sequence, so trades journaled after it are still
+    // replayed on top. stocks which are not backfilled are kept as they are, closed candles of the backfilled ones
+    // replace kept candles of the same buckets, so missing or wrong history is repaired. retention is applied
+    public MarketSnapshot merge(MarketSnapshot state, MarketSnapshot backfilled) {
+        final var stocks = new LinkedHashMap<String, StockSnapshot>();
+        for (var stock : state.stocks) {
+            stocks.put(stock.stockName, stock);
+        }
+        for (var stock : backfilled.stocks) {
+            stocks.merge(stock.stockName, stock, this::merge);
+        }
+        return new MarketSnapshot(state.sequence, new ArrayList<>(stocks.values()));
+    }
+
+    private StockSnapshot merge(StockSnapshot kept, StockSnapshot backfilled) {
+        final var levels = new LinkedHashMap<>(kept.levels);
+        backfilled.levels.forEach((candleSize, candles) -> levels.merge(candleSize, candles, (k, b) -> merge(candleSize, k, b)));
+        return new StockSnapshot(kept.stockName, levels);
+    }
+
+    // closed candles of both series ordered by bucket, the backfilled one wins a bucket present in both.
+    // the not-ready candle of the state follows them if its bucket is not closed, otherwise the backfilled one
+    private CandleSeries merge(CandleSize candleSize, CandleSeries kept, CandleSeries backfilled) {
+        final var candles = new CandleStore(candleSize, retention.getOrDefault(candleSize, Retention.UNLIMITED));
+        var lastBucket = Long.MIN_VALUE;
+        var k = 0;
+        var b = 0;
+        while (k < kept.closedSize() || b < backfilled.closedSize()) {
+            final var keptBucket = k < kept.closedSize() ? candleSize.startMillis(kept.openTimeMillis(k)) : Long.MAX_VALUE;
+            final var backfilledBucket = b < backfilled.closedSize() ? candleSize.startMillis(backfilled.openTimeMillis(b)) : Long.MAX_VALUE;
+            if (backfilledBucket <= keptBucket) {
+                add(candles, backfilled, b++);
+                k += backfilledBucket == keptBucket ? 1 : 0;
+                lastBucket = backfilledBucket;
+            } else {
+                add(candles, kept, k++);
+                lastBucket = keptBucket;
+            }
+        }
+        for (var series : List.of(kept, backfilled)) {
+            if (series.size() > series.closedSize() && candleSize.startMillis(series.openTimeMillis(series.closedSize())) > lastBucket) {
+                return candles.snapshot(series.get(series.closedSize()));
+            }
+        }
+        return candles.snapshot(null);
+    }
+
+    private static void add(CandleStore candles, CandleSeries series, int index) {
+        candles.add(series.openTimeMillis(index), series.closeTimeMillis(index),
+            series.minPrice(index), series.maxPrice(index), series.openPrice(index), series.closePrice(index));
+    }
+
+    // ticks of every symbol ordered by time, ticks of the same time in the order of files and in the order
+    // they were recorded in a file. files are not expected to be named in the order of their ticks
+    private Map<String, Ticks> read(List<Path> files) {
+        final var sorted = files.stream().sorted().collect(Collectors.toList());
+        final var perFile = pool.submit(() -> sorted.parallelStream().map(Backfill::readFile).collect(Collectors.toList())).join();
+        final var merged = new LinkedHashMap<String, Ticks>();
+        for (var fileTicks : perFile) {
+            fileTicks.forEach((symbol, ticks) -> merged.merge(symbol, ticks, Ticks::append));
+        }
+        pool.submit(() -> merged.values().parallelStream().forEach(Ticks::sort)).join();
+        return merged;
+    }
+
+    private static Map<String, Ticks> readFile(Path file) {
+        final var ticks = new HashMap<String, Ticks>();
+        final TradeConsumer consumer = (stockName, epochMillis, price) ->
+            ticks.computeIfAbsent(stockName, k -> new Ticks()).add(epochMillis, price);
+        final var name = file.getFileName().toString();
+        if (name.endsWith(".journal")) {
+            TradeJournal.read(file, 0, consumer);
+        } else if (name.endsWith(".ndjson")) {
+            final var parser = new TickParser(OBJECT_MAPPER.getFactory());
+            try (var lines = Files.lines(file)) {
+                lines.filter(line -> !line.isBlank()).forEach(line -> {
+                    try {
+                        parser.parse(line, consumer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(format("unable to parse tick frame in %s", file), e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(format("unable to read tick file %s", file), e);
+            }
+        } else {
+            throw new RuntimeException(format("tried to backfill from unsupported tick file %s", file));
+        }
+        return ticks;
+    }
+
+    private static long perSecondPerCore(long ticks, long nanos, int cores) {
+        return ticks * 1_000_000_000L / Math.max(1, nanos) / cores;
+    }
+
+    // splits symbols in halves until a single symbol is left
+    private class AggregateTask extends RecursiveTask<List<StockSnapshot>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] symbols;
+        private final int from;
+        private final int to;
+        private final transient Map<String, Ticks> ticks;
+        private final long closeUntilMillis;
+
+        AggregateTask(String[] symbols, int from, int to, Map<String, Ticks> ticks, long closeUntilMillis) {
+            this.symbols = symbols;
+            this.from = from;
+            this.to = to;
+            this.ticks = ticks;
+            this.closeUntilMillis = closeUntilMillis;
+        }
+
+        @Override
+        protected List<StockSnapshot> compute() {
+            if (to - from == 0) {
+                return List.of();
+            }
+            if (to - from == 1) {
+                return List.of(aggregate(symbols[from], ticks.get(symbols[from])));
+            }
+            final var middle = (from + to) >>> 1;
+            final var left = new AggregateTask(symbols, from, middle, ticks, closeUntilMillis);
+            left.fork();
+            final var right = new AggregateTask(symbols, middle, to, ticks, closeUntilMillis).compute();
+            final var result = new ArrayList<>(left.join());
+            result.addAll(right);
+            return result;
+        }
+
+        private StockSnapshot aggregate(String symbol, Ticks symbolTicks) {
+            final var stock = new Stock(symbol, candleUnits, retention);
+            var late = 0;
+            for (var i = 0; i < symbolTicks.size; i++) {
+                if (!stock.addTrade(new Trade(symbol, symbolTicks.times[i], symbolTicks.prices[i]))) {
+                    late++;
+                }
+            }
+            if (late > 0) {
+                LOG.warn("{} ticks of {} came after their candles were closed and were folded into the next ones", late, symbol);
+            }
+            stock.closeCandles(closeUntilMillis);
+            return stock.capture();
+        }
+    }
+
+    // ticks of a single symbol kept in primitive columns, prices are encoded by ScaledPrices
+    private static class Ticks {
+        long[] times = new long[64];
+        long[] prices = new long[64];
+        int size;
+
+        void add(long time, long price) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            times[size] = time;
+            prices[size] = price;
+            size++;
+        }
+
+        // stable, so ticks of the same time keep their order
+        void sort() {
+            var sorted = true;
+            for (var i = 1; i < size && sorted; i++) {
+                sorted = times[i - 1] <= times[i];
+            }
+            if (sorted) {
+                return;
+            }
+            final var order = IntStream.range(0, size).boxed()
+                .sorted(Comparator.comparingLong(i -> times[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            final var sortedTimes = new long[size];
+            final var sortedPrices = new long[size];
+            for (var i = 0; i < size; i++) {
+                sortedTimes[i] = times[order[i]];
+                sortedPrices[i] = prices[order[i]];
+            }
+            times = sortedTimes;
+            prices = sortedPrices;
+        }
+
+        Ticks append(Ticks next) {
+            for (var i = 0; i < next.size; i++) {
+                add(next.times[i], next.prices[i]);
+            }
+            return this;
+        }
+    }
+}
@@ -1,30 +1,141 @@
 package candles.config;
 
 import candles.model.CandleSize;
+import candles.model.IngestPolicy;
+import candles.model.LatePolicy;
+import candles.model.MarketManager;
+import candles.model.PriceScales;
+import candles.model.Retention;
+import candles.model.ScaledPrices;
+import candles.resources.HttpThreads;
+import candles.resources.output.CandlesJsonCache;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toUnmodifiableList;
 
 public class Config {
     public final int port;
-    public final int threadPoolSize;
+    // amount of aggregation shards, each one is served by its own thread. threadPoolSize of older configs is taken for it
+    public final int shards;
     public final String url;
+    // trades waiting for every shard, a power of two
+    public final int ingestQueue;
+    // what happens to trades received while a shard queue is full: BLOCK, CONFLATE or DROP
+    public final IngestPolicy ingestPolicy;
+    // buckets are closed once trades this long after their end come
+    public final Duration closeDelay;
+    // what happens to trades coming after their candles were closed: FOLD or DROP
+    public final LatePolicy lateTrades;
     public final List<CandleSize> candleSizes;
+    public final Map<CandleSize, Retention> retention;
+    // directory of the trade journal, journaling is off if not set
+    public final String journalDirectory;
+    public final long journalFlushMillis;
+    // directory of sealed candle segments, all candles are kept in the heap if not set
+    public final String segmentsDirectory;
+    // candles older than this comparing to the newest candle are moved to segments
+    public final Duration sealAfter;
+    // directory of market snapshots, requires the journal. snapshots are not taken if not set
+    public final String snapshotsDirectory;
+    public final Duration snapshotInterval;
+    // allowed fractional digits of prices, the default one and overrides per stock
+    public final PriceScales priceScales;
+    // heap for candles encoded into responses, least recently requested ones are evicted over it
+    public final long responseCacheBytes;
+    // streamed not-ready candles are updated at most once per this interval
+    public final Duration streamInterval;
+    // closed candle events waiting for a streaming client, slower clients are disconnected
+    public final int streamBuffer;
+    // streaming clients served at once, 0 if not limited. defaults to half of the http pool, not limited with virtual threads
+    public final int streamMaxClients;
+    // threads encoding candles of batch requests, defaults to amount of cores
+    public final int batchParallelism;
+    // stocks and candle sizes which candles rolled up on request are kept for
+    public final int derivedCandlesCache;
+    // threads running http requests: a bounded pool queueing requests over it or a virtual thread per request
+    public final HttpThreads.Model httpThreads;
+    public final int httpMaxThreads;
+    public final int httpMinThreads;
+    // requests waiting for a pooled thread, requests over it are rejected
+    public final int httpQueue;
+    public final Duration httpIdleTimeout;
 
     public Config(@JsonProperty("port")  int port,
-                  @JsonProperty("threadPoolSize") int threadPoolSize,
+                  @JsonProperty("shards") Integer shards,
+                  @JsonProperty("threadPoolSize") Integer threadPoolSize,
                   @JsonProperty("url") String url,
-                  @JsonProperty("candles") List<String> candleSizes) {
+                  @JsonProperty("candles") List<String> candleSizes,
+                  @JsonProperty("retention") Map<String, String> retention,
+                  @JsonProperty("maxCandles") Integer maxCandles,
+                  @JsonProperty("journalDirectory") String journalDirectory,
+                  @JsonProperty("journalFlushMillis") Long journalFlushMillis,
+                  @JsonProperty("segmentsDirectory") String segmentsDirectory,
+                  @JsonProperty("sealAfter") String sealAfter,
+                  @JsonProperty("snapshotsDirectory") String snapshotsDirectory,
+                  @JsonProperty("snapshotInterval") String snapshotInterval,
+                  @JsonProperty("priceScale") Integer priceScale,
+                  @JsonProperty("priceScales") Map<String, Integer> priceScales,
+                  @JsonProperty("responseCacheBytes") Long responseCacheBytes,
+                  @JsonProperty("streamInterval") String streamInterval,
+                  @JsonProperty("streamBuffer") Integer streamBuffer,
+                  @JsonProperty("streamMaxClients") Integer streamMaxClients,
+                  @JsonProperty("batchParallelism") Integer batchParallelism,
+                  @JsonProperty("derivedCandlesCache") Integer derivedCandlesCache,
+                  @JsonProperty("httpThreads") String httpThreads,
+                  @JsonProperty("httpMaxThreads") Integer httpMaxThreads,
+                  @JsonProperty("httpMinThreads") Integer httpMinThreads,
+                  @JsonProperty("httpQueue") Integer httpQueue,
+                  @JsonProperty("httpIdleTimeout") String httpIdleTimeout,
+                  @JsonProperty("ingestQueue") Integer ingestQueue,
+                  @JsonProperty("ingestPolicy") String ingestPolicy,
+                  @JsonProperty("closeDelay") String closeDelay,
+                  @JsonProperty("lateTrades") String lateTrades) {
         this.port = port;
         this.url = url;
-        this.threadPoolSize = threadPoolSize;
-        this.candleSizes = candleSizes.stream().map(s -> {
-            final var split = s.split(":");
-            return new CandleSize(Integer.parseInt(split[0]), ChronoUnit.valueOf(split[1]));
-        }).collect(toUnmodifiableList());
+        this.shards = shards != null ? shards : threadPoolSize != null ? threadPoolSize : Runtime.getRuntime().availableProcessors();
+        this.ingestQueue = ingestQueue == null ? MarketManager.DEFAULT_RING_SIZE : ingestQueue;
+        this.ingestPolicy = ingestPolicy == null ? IngestPolicy.BLOCK : IngestPolicy.valueOf(ingestPolicy.toUpperCase());
+        this.closeDelay = closeDelay == null ? MarketManager.DEFAULT_CLOSE_DELAY : Duration.parse(closeDelay);
+        this.lateTrades = lateTrades == null ? LatePolicy.FOLD : LatePolicy.valueOf(lateTrades.toUpperCase());
+        this.candleSizes = candleSizes.stream().map(Config::parseCandleSize).collect(toUnmodifiableList());
+
+        final var maxAges = retention == null ? Map.<CandleSize, Duration>of() : retention.entrySet().stream()
+            .collect(toMap(e -> parseCandleSize(e.getKey()), e -> Duration.parse(e.getValue())));
+        final var maxCount = maxCandles == null ? 0 : maxCandles;
+        this.retention = this.candleSizes.stream().distinct().collect(toMap(identity(),
+            cs -> new Retention(maxAges.getOrDefault(cs, Duration.ZERO), maxCount)));
+        this.journalDirectory = journalDirectory;
+        this.journalFlushMillis = journalFlushMillis == null ? 20 : journalFlushMillis;
+        this.segmentsDirectory = segmentsDirectory;
+        this.sealAfter = sealAfter == null ? Duration.ofHours(1) : Duration.parse(sealAfter);
+        this.snapshotsDirectory = snapshotsDirectory;
+        this.snapshotInterval = snapshotInterval == null ? Duration.ofMinutes(5) : Duration.parse(snapshotInterval);
+        this.priceScales = priceScale == null && priceScales == null ? PriceScales.UNLIMITED : new PriceScales(
+            priceScale == null ? ScaledPrices.MAX_SCALE : priceScale, priceScales == null ? Map.of() : priceScales);
+        this.responseCacheBytes = responseCacheBytes == null ? CandlesJsonCache.DEFAULT_BUDGET_BYTES : responseCacheBytes;
+        this.streamInterval = streamInterval == null ? Duration.ofMillis(250) : Duration.parse(streamInterval);
+        this.streamBuffer = streamBuffer == null ? 256 : streamBuffer;
+        this.batchParallelism = batchParallelism == null ? Runtime.getRuntime().availableProcessors() : batchParallelism;
+        this.derivedCandlesCache = derivedCandlesCache == null ? 1024 : derivedCandlesCache;
+        this.httpThreads = httpThreads == null ? HttpThreads.Model.POOL : HttpThreads.Model.valueOf(httpThreads.toUpperCase());
+        this.httpMaxThreads = httpMaxThreads == null ? 200 : httpMaxThreads;
+        this.httpMinThreads = httpMinThreads == null ? 8 : httpMinThreads;
+        this.httpQueue = httpQueue == null ? 1024 : httpQueue;
+        this.httpIdleTimeout = httpIdleTimeout == null ? Duration.ofMinutes(1) : Duration.parse(httpIdleTimeout);
+        this.streamMaxClients = streamMaxClients != null ? streamMaxClients
+            : this.httpThreads == HttpThreads.Model.VIRTUAL ? 0 : Math.max(1, this.httpMaxThreads / 2);
+    }
+
+    // candle size is configured as <size>:<ChronoUnit name>, for example 5:SECONDS
+    private static CandleSize parseCandleSize(String candleSize) {
+        final var split = candleSize.split(":");
+        return new CandleSize(Integer.parseInt(split[0]), ChronoUnit.valueOf(split[1]));
     }
 }
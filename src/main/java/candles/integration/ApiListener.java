@@ -1,7 +1,11 @@
 package candles.integration;
 
+import candles.metrics.LatencyHistogram;
+import candles.metrics.Metrics;
 import candles.model.MarketManager;
-import candles.model.Trade;
+import candles.model.PriceScales;
+import candles.model.ScaledPrices;
+import candles.persistence.TradeJournal;
 import com.neovisionaries.ws.client.WebSocket;
 import com.neovisionaries.ws.client.WebSocketAdapter;
 import com.neovisionaries.ws.client.WebSocketException;
@@ -12,17 +16,54 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import static candles.Application.OBJECT_MAPPER;
 
-public class ApiListener extends WebSocketAdapter {
+public class ApiListener extends WebSocketAdapter implements TradeConsumer {
 
     private static final Logger LOG = LoggerFactory.getLogger(ApiListener.class);
 
     private final MarketManager marketManager;
 
+    // trades taken by shards are journaled, null if journaling is off. trades dropped by overloaded shards are not,
+    // so candles rebuilt from the journal on restart are the same as the ones aggregated before
+    private final TradeJournal journal;
+
+    // ticks with prices more precise than their stocks allow are dropped
+    private final PriceScales priceScales;
+
+    // frames are delivered by the single websocket reading thread, so the parser is not shared
+    private final TickParser tickParser;
+
+    private final LongAdder received;
+    private final LongAdder dropped;
+    // milliseconds between a trade and its arrival
+    private final LatencyHistogram feedLag;
+    // nanoseconds spent on a frame from parsing to handing its trades to the shards
+    private final LatencyHistogram frameDurations;
+
     public ApiListener(MarketManager marketManager) {
+        this(marketManager, null);
+    }
+
+    public ApiListener(MarketManager marketManager, TradeJournal journal) {
+        this(marketManager, journal, PriceScales.UNLIMITED);
+    }
+
+    public ApiListener(MarketManager marketManager, TradeJournal journal, PriceScales priceScales) {
+        this(marketManager, journal, priceScales, new Metrics());
+    }
+
+    public ApiListener(MarketManager marketManager, TradeJournal journal, PriceScales priceScales, Metrics metrics) {
         this.marketManager = marketManager;
+        this.journal = journal;
+        this.priceScales = priceScales;
+        this.tickParser = new TickParser(OBJECT_MAPPER.getFactory());
+        this.received = metrics.counter("candles_ticks_received_total", "Ticks received from the feed");
+        this.dropped = metrics.counter("candles_ticks_dropped_total", "Ticks dropped because of too precise prices");
+        this.feedLag = metrics.summary("candles_feed_lag_seconds", "Time between a trade and its arrival from the feed", "", 1e3);
+        this.frameDurations = metrics.summary("candles_feed_frame_seconds", "Time spent on a feed frame from parsing to aggregation", "", 1e9);
     }
 
     @Override
@@ -38,10 +79,22 @@ public class ApiListener extends WebSocketAdapter {
 
     @Override
     public void onTextMessage(WebSocket websocket, String text) throws Exception {
-        final var request = OBJECT_MAPPER.readValue(text, InputJson.class);
-        for (var event : request.data) {
-            var trade = new Trade(event.stock, event.time, event.price);
-            marketManager.processMarketEvent(trade);
+        final var start = System.nanoTime();
+        tickParser.parse(text, this);
+        frameDurations.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void onTrade(String stockName, long epochMillis, long price) {
+        received.increment();
+        feedLag.record(System.currentTimeMillis() - epochMillis);
+        if (!priceScales.accepts(stockName, price)) {
+            dropped.increment();
+            LOG.warn("dropped trade of {} with price {} more precise than scale {}", stockName, ScaledPrices.decode(price), priceScales.scaleOf(stockName));
+            return;
+        }
+        if (marketManager.processMarketEvent(stockName, epochMillis, price) && journal != null) {
+            journal.append(stockName, epochMillis, price);
         }
     }
 
@@ -0,0 +1,73 @@
+package candles.integration;
+
+// canonical stock names looked up directly by characters of the parsed input, so a known symbol
+// is resolved without allocating a String or interning it. not thread safe - used by the single ingest thread
+public class SymbolTable {
+
+    // open addressing with linear probing, length is a power of two
+    private String[] names;
+    private int size;
+
+    public SymbolTable() {
+        this.names = new String[256];
+    }
+
+    public String lookup(char[] chars, int offset, int length) {
+        final var hash = hash(chars, offset, length);
+        final var mask = names.length - 1;
+        var slot = hash & mask;
+        while (names[slot] != null) {
+            if (matches(names[slot], chars, offset, length)) {
+                return names[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        final var name = new String(chars, offset, length);
+        names[slot] = name;
+        if (++size * 2 > names.length) {
+            resize();
+        }
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        final var old = names;
+        names = new String[old.length * 2];
+        final var mask = names.length - 1;
+        for (var name : old) {
+            if (name != null) {
+                var slot = name.hashCode() & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = name;
+            }
+        }
+    }
+
+    // the same as String.hashCode, so names can be rehashed without the source characters
+    private static int hash(char[] chars, int offset, int length) {
+        var hash = 0;
+        for (var i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (var i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package candles.integration;
+
+import candles.model.ScaledPrices;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_STRING;
+
+// token-level parser of feed frames {"type": ..., "data": [{"p": price, "s": stock, "t": epoch millis}, ...]}.
+// trades are emitted as soon as they are read, without binding the frame to objects, prices are fixed-point longs.
+// stock names are resolved through the symbol table, times stay epoch millis. not thread safe
+public class TickParser {
+
+    private final JsonFactory jsonFactory;
+    private final SymbolTable symbols;
+
+    public TickParser(JsonFactory jsonFactory) {
+        this(jsonFactory, new SymbolTable());
+    }
+
+    public TickParser(JsonFactory jsonFactory, SymbolTable symbols) {
+        this.jsonFactory = jsonFactory;
+        this.symbols = symbols;
+    }
+
+    public void parse(String frame, TradeConsumer consumer) throws IOException {
+        try (var parser = jsonFactory.createParser(frame)) {
+            if (parser.nextToken() != START_OBJECT) {
+                throw new JsonParseException(parser, "frame is expected to be an object");
+            }
+            while (parser.nextToken() == FIELD_NAME) {
+                final var field = parser.getCurrentName();
+                final var token = parser.nextToken();
+                if ("data".equals(field) && token == START_ARRAY) {
+                    while (parser.nextToken() == START_OBJECT) {
+                        parseTick(parser, consumer);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void parseTick(JsonParser parser, TradeConsumer consumer) throws IOException {
+        String stockName = null;
+        var price = 0L;
+        var hasPrice = false;
+        var time = 0L;
+        var hasTime = false;
+
+        while (parser.nextToken() == FIELD_NAME) {
+            final var field = parser.getCurrentName();
+            final var token = parser.nextToken();
+            switch (field) {
+                case "p":
+                    price = parsePrice(parser, token);
+                    hasPrice = true;
+                    break;
+                case "s":
+                    stockName = symbols.lookup(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    break;
+                case "t":
+                    time = token == VALUE_STRING ? Long.parseLong(parser.getText()) : parser.getLongValue();
+                    hasTime = true;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (stockName == null || !hasPrice || !hasTime) {
+            throw new JsonParseException(parser, "tick is expected to have p, s and t fields");
+        }
+        consumer.onTrade(stockName, time, price);
+    }
+
+    // parsed straight from the token characters into a fixed-point long, prices not fitting it are rejected
+    private static long parsePrice(JsonParser parser, JsonToken token) throws IOException {
+        if (token != VALUE_STRING && !token.isNumeric()) {
+            throw new JsonParseException(parser, "price is expected to be a number");
+        }
+        try {
+            return ScaledPrices.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new JsonParseException(parser, e.getMessage(), e);
+        }
+    }
+}
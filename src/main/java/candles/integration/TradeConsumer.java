@@ -0,0 +1,8 @@
+package candles.integration;
+
+@FunctionalInterface
+public interface TradeConsumer {
+
+    // price is encoded by ScaledPrices
+    void onTrade(String stockName, long epochMillis, long price);
+}
@@ -0,0 +1,81 @@
+package candles.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// log-linear histogram in the manner of HdrHistogram: every power of two range is split into SUB_BUCKETS equal
+// buckets, so values are kept with a relative error under 1/SUB_BUCKETS in a fixed array. recording is lock-free
+// and allocation-free, percentiles are calculated on read from a racy but consistent enough view of the counts
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+    }
+
+    // negative values are recorded as zero
+    public void record(long value) {
+        final var recorded = Math.max(0, value);
+        counts.incrementAndGet(bucket(recorded));
+        count.increment();
+        sum.add(recorded);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    // the highest value of the bucket holding the given share of recorded values, zero if nothing was recorded
+    public long percentile(double percentile) {
+        final var counted = new long[BUCKETS];
+        var total = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            counted[i] = counts.get(i);
+            total += counted[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final var rank = Math.max(1, (long) Math.ceil(percentile * total));
+        var seen = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            seen += counted[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    // values below SUB_BUCKETS are kept exactly, the others by their highest SUB_BUCKET_BITS + 1 bits
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final var exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final var shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final var shift = bucket / SUB_BUCKETS - 1;
+        final var lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package candles.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// registry of the service metrics written in the Prometheus text format. counters are striped (LongAdder)
+// and latencies are kept in log-linear histograms, so recording on hot paths costs a few uncontended atomic adds.
+// gauges are read only when metrics are scraped. metrics are expected to be registered on startup
+public class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // families by name in the order of registration
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public synchronized LongAdder counter(String name, String help) {
+        final var counter = new LongAdder();
+        family(name, help, "counter").samples.add(new Sample("", counter::sum, null, 1));
+        return counter;
+    }
+
+    // counter maintained elsewhere, for example a sequence
+    public synchronized void counter(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "counter").samples.add(new Sample(labels, value, null, 1));
+    }
+
+    public synchronized void gauge(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "gauge").samples.add(new Sample(labels, value, null, 1));
+    }
+
+    // values are recorded in units and written as summaries in base units, for example nanoseconds and seconds
+    public synchronized LatencyHistogram summary(String name, String help, String labels, double unitsPerBaseUnit) {
+        final var histogram = new LatencyHistogram();
+        family(name, help, "summary").samples.add(new Sample(labels, null, histogram, unitsPerBaseUnit));
+        return histogram;
+    }
+
+    public synchronized String scrape() {
+        final var out = new StringBuilder(4096);
+        for (var family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (var sample : family.samples) {
+                if (sample.histogram == null) {
+                    line(out, family.name, sample.labels, null, Long.toString(sample.value.getAsLong()));
+                    continue;
+                }
+                for (var quantile : QUANTILES) {
+                    final var value = sample.histogram.percentile(quantile) / sample.unitsPerBaseUnit;
+                    line(out, family.name, sample.labels, "quantile=\"" + quantile + "\"", Double.toString(value));
+                }
+                line(out, family.name + "_sum", sample.labels, null, Double.toString(sample.histogram.sum() / sample.unitsPerBaseUnit));
+                line(out, family.name + "_count", sample.labels, null, Long.toString(sample.histogram.count()));
+            }
+        }
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        final var family = families.computeIfAbsent(name, n -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new RuntimeException(String.format("tried to register %s %s which is already registered as %s", type, name, family.type));
+        }
+        return family;
+    }
+
+    private static void line(StringBuilder out, String name, String labels, String extraLabel, String value) {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final List<Sample> samples = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    // either a value or a histogram, labels are written as is, for example route="/metrics"
+    private static class Sample {
+        final String labels;
+        final LongSupplier value;
+        final LatencyHistogram histogram;
+        final double unitsPerBaseUnit;
+
+        Sample(String labels, LongSupplier value, LatencyHistogram histogram, double unitsPerBaseUnit) {
+            this.labels = labels;
+            this.value = value;
+            this.histogram = histogram;
+            this.unitsPerBaseUnit = unitsPerBaseUnit;
+        }
+    }
+}
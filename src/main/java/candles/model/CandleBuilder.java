@@ -1,59 +1,116 @@
 package candles.model;
 
-import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import static candles.model.CandleStore.CLOSE_PRICE;
+import static candles.model.CandleStore.CLOSE_TIME;
+import static candles.model.CandleStore.COLUMNS;
+import static candles.model.CandleStore.MAX_PRICE;
+import static candles.model.CandleStore.MIN_PRICE;
+import static candles.model.CandleStore.OPEN_PRICE;
+import static candles.model.CandleStore.OPEN_TIME;
+import static candles.model.CandleStore.fromEpochMillis;
+import static candles.model.CandleStore.toEpochMillis;
 
+// mutable accumulator of a not-ready candle, updated in place by the single writer owning it, so folding
+// a trade allocates nothing. it is reused for consecutive candles and never shared with readers: they get
+// candles copied out of it on close and on publish (see CandleRollup).
+// times are epoch millis and prices are fixed-point longs (see ScaledPrices),
+// they are converted to date-times and BigDecimals only when a Candle is built
 public class CandleBuilder {
     public final CandleSize candleUnit;
-    public final LocalDateTime openTime;
-    public final LocalDateTime closeTime;
-    public final BigDecimal minPrice;
-    public final BigDecimal maxPrice;
-    public final BigDecimal openPrice;
-    public final BigDecimal closePrice;
+    public long openTimeMillis;
+    public long closeTimeMillis;
+    public long minPrice;
+    public long maxPrice;
+    public long openPrice;
+    public long closePrice;
 
     public static CandleBuilder candle(CandleSize candleUnit, Trade firstTrade) {
-        return new CandleBuilder(candleUnit, firstTrade);
+        final var builder = new CandleBuilder(candleUnit);
+        builder.reset(firstTrade);
+        return builder;
     }
 
-    private CandleBuilder(CandleSize candleUnit,
-                         LocalDateTime openTime,
-                         LocalDateTime closeTime,
-                         BigDecimal minPrice,
-                         BigDecimal maxPrice,
-                         BigDecimal openPrice,
-                         BigDecimal closePrice) {
-        this.candleUnit = candleUnit;
-        this.openTime = openTime;
-        this.closeTime = closeTime;
-        this.minPrice = minPrice;
-        this.maxPrice = maxPrice;
-        this.openPrice = openPrice;
-        this.closePrice = closePrice;
+    public static CandleBuilder candle(CandleSize candleUnit, Candle firstCandle) {
+        final var builder = new CandleBuilder(candleUnit);
+        builder.reset(firstCandle);
+        return builder;
     }
 
-    private CandleBuilder(CandleSize candleUnit, Trade firstTrade) {
+    // empty builder to be reset before use
+    CandleBuilder(CandleSize candleUnit) {
         this.candleUnit = candleUnit;
-        this.openTime = firstTrade.time;
-        this.closeTime = firstTrade.time;
-        this.minPrice = firstTrade.price;
-        this.maxPrice = firstTrade.price;
-        this.openPrice = firstTrade.price;
-        this.closePrice = firstTrade.price;
+    }
+
+    // starts a new candle with the trade
+    public void reset(Trade firstTrade) {
+        openTimeMillis = firstTrade.timeMillis;
+        closeTimeMillis = firstTrade.timeMillis;
+        minPrice = firstTrade.price;
+        maxPrice = firstTrade.price;
+        openPrice = firstTrade.price;
+        closePrice = firstTrade.price;
+    }
+
+    // starts a new candle with a copy of the given one
+    public void reset(CandleBuilder firstCandle) {
+        openTimeMillis = firstCandle.openTimeMillis;
+        closeTimeMillis = firstCandle.closeTimeMillis;
+        minPrice = firstCandle.minPrice;
+        maxPrice = firstCandle.maxPrice;
+        openPrice = firstCandle.openPrice;
+        closePrice = firstCandle.closePrice;
+    }
+
+    // starts a new candle with a copy of the candle of the series
+    void reset(CandleSeries candles, int index) {
+        openTimeMillis = candles.openTimeMillis(index);
+        closeTimeMillis = candles.closeTimeMillis(index);
+        minPrice = candles.minPrice(index);
+        maxPrice = candles.maxPrice(index);
+        openPrice = candles.openPrice(index);
+        closePrice = candles.closePrice(index);
+    }
+
+    public void reset(Candle firstCandle) {
+        openTimeMillis = toEpochMillis(firstCandle.openTime);
+        closeTimeMillis = toEpochMillis(firstCandle.closeTime);
+        minPrice = ScaledPrices.encode(firstCandle.minPrice);
+        maxPrice = ScaledPrices.encode(firstCandle.maxPrice);
+        openPrice = ScaledPrices.encode(firstCandle.openPrice);
+        closePrice = ScaledPrices.encode(firstCandle.closePrice);
     }
 
     public Candle build() {
-        return new Candle(candleUnit, openTime, closeTime, minPrice, maxPrice, openPrice, closePrice);
+        return new Candle(candleUnit, fromEpochMillis(openTimeMillis), fromEpochMillis(closeTimeMillis),
+            ScaledPrices.decode(minPrice), ScaledPrices.decode(maxPrice), ScaledPrices.decode(openPrice), ScaledPrices.decode(closePrice));
+    }
+
+    // the candle in the CandleStore layout
+    long[] columns() {
+        final var columns = new long[COLUMNS];
+        columns[OPEN_TIME] = openTimeMillis;
+        columns[CLOSE_TIME] = closeTimeMillis;
+        columns[MIN_PRICE] = minPrice;
+        columns[MAX_PRICE] = maxPrice;
+        columns[OPEN_PRICE] = openPrice;
+        columns[CLOSE_PRICE] = closePrice;
+        return columns;
     }
 
     //this method assumes adding trades sorted by time as they were received
-    public CandleBuilder addTrade(Trade trade) {
-        final var closeTime = trade.time;
-        final var minPrice = this.minPrice.min(trade.price);
-        final var maxPrice = this.maxPrice.max(trade.price);
-        final var closePrice = trade.price;
+    public void addTrade(Trade trade) {
+        closeTimeMillis = trade.timeMillis;
+        minPrice = ScaledPrices.min(minPrice, trade.price);
+        maxPrice = ScaledPrices.max(maxPrice, trade.price);
+        closePrice = trade.price;
+    }
 
-        return new CandleBuilder(this.candleUnit, this.openTime, closeTime, minPrice, maxPrice, this.openPrice, closePrice);
+    //this method assumes adding finer candles sorted by time as they were closed
+    public void addCandle(CandleBuilder candle) {
+        closeTimeMillis = candle.closeTimeMillis;
+        minPrice = ScaledPrices.min(minPrice, candle.minPrice);
+        maxPrice = ScaledPrices.max(maxPrice, candle.maxPrice);
+        closePrice = candle.closePrice;
     }
 
 }
@@ -0,0 +1,49 @@
+package candles.model;
+
+import java.util.Objects;
+
+// selects candles by open time: from is inclusive, to is exclusive (both epoch millis).
+// when more candles match than limit allows, the latest ones are returned
+public class CandleQuery {
+
+    public static final CandleQuery ALL = new CandleQuery(Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    public final long fromMillis;
+    public final long toMillis;
+    public final int limit;
+
+    public CandleQuery(long fromMillis, long toMillis, int limit) {
+        if (limit <= 0) {
+            throw new RuntimeException(String.format("tried to create inappropriate candle query with limit %s", limit));
+        }
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.limit = limit;
+    }
+
+    public boolean matches(long openTimeMillis) {
+        return openTimeMillis >= fromMillis && openTimeMillis < toMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final CandleQuery that = (CandleQuery) o;
+        return fromMillis == that.fromMillis && toMillis == that.toMillis && limit == that.limit;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromMillis, toMillis, limit);
+    }
+
+    @Override
+    public String toString() {
+        return "CandleQuery{" +
+            "fromMillis=" + fromMillis +
+            ", toMillis=" + toMillis +
+            ", limit=" + limit +
+            '}';
+    }
+}
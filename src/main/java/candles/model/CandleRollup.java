@@ -0,0 +1,217 @@
+package candles.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+// single aggregation level of a stock. the finest levels are fed by trades, every coarser level is folded
+// from closed candles of the biggest finer level its duration is divisible by, so each trade is processed once.
+// modified by a single writer, readers only see snapshots published by it. the not-ready candle is folded
+// in place, so trades are aggregated without allocations, candles are copied out only on close and on publish
+class CandleRollup {
+
+    final CandleSize candleSize;
+    // long-term ready candle storage, old candles may be sealed out of the heap (see CandleTier)
+    final CandleStore candles;
+    // finer level feeding this one, null for levels fed by trades
+    private final CandleRollup source;
+    // coarser levels fed by candles closed on this level
+    private CandleRollup[] targets;
+    // storage for not-ready candle, contains only closed candles of the source level for non-base levels.
+    // reused for every candle of the level, holds nothing while hasCurrent is false
+    private final CandleBuilder current;
+    private boolean hasCurrent;
+    // epoch millis
+    private long currentEnd;
+    // start of the bucket the level is closed until, trades and candles of buckets before it are late
+    private long closedEnd = Long.MIN_VALUE;
+    // not-ready candle combined with not-ready candles of finer levels, reused on every publish
+    private final CandleBuilder live;
+    // closed candles and the not-ready one as of the last publish
+    private volatile CandleSeries published;
+
+    private CandleRollup(CandleSize candleSize, CandleStore candles, CandleRollup source) {
+        this.candleSize = candleSize;
+        this.candles = candles;
+        this.source = source;
+        this.targets = new CandleRollup[0];
+        if (source != null) {
+            source.addTarget(this);
+        }
+        this.current = new CandleBuilder(candleSize);
+        this.live = new CandleBuilder(candleSize);
+        this.published = candles.snapshot(null);
+    }
+
+    // builds aggregation levels ordered from the finest to the coarsest one, tier may be null
+    static Map<CandleSize, CandleRollup> hierarchy(String stockName, List<CandleSize> candleSizes, Map<CandleSize, Retention> retention, CandleTier tier) {
+        final var sorted = new ArrayList<>(candleSizes);
+        sorted.sort(Comparator.comparingLong(CandleSize::getDurationInMillis));
+
+        final var rollups = new LinkedHashMap<CandleSize, CandleRollup>();
+        for (var candleSize : sorted) {
+            if (rollups.containsKey(candleSize)) {
+                continue;
+            }
+            CandleRollup source = null;
+            for (var finer : rollups.values()) {
+                final var finerDuration = finer.candleSize.getDurationInMillis();
+                if (finerDuration < candleSize.getDurationInMillis() && candleSize.getDurationInMillis() % finerDuration == 0) {
+                    source = finer;//finer levels are sorted, so the last matching one is the biggest
+                }
+            }
+            final var candles = new CandleStore(candleSize, retention.getOrDefault(candleSize, Retention.UNLIMITED), stockName, tier);
+            rollups.put(candleSize, new CandleRollup(candleSize, candles, source));
+        }
+        return unmodifiableMap(rollups);
+    }
+
+    private void addTarget(CandleRollup target) {
+        targets = Arrays.copyOf(targets, targets.length + 1);
+        targets[targets.length - 1] = target;
+    }
+
+    boolean isBase() {
+        return source == null;
+    }
+
+    //this method assumes adding trades sorted by time as they were received. trades of buckets already closed
+    //are folded into the first bucket still open, so buckets of closed candles keep growing, false is returned
+    //for them. other late trades are added to the current candle
+    boolean addTrade(Trade trade) {
+        if (isLate(trade.timeMillis)) {
+            foldLate(trade.price, trade.price, trade.price, trade.price);
+            return false;
+        }
+        if (hasCurrent && trade.timeMillis >= currentEnd) {
+            close(trade.timeMillis);
+        }
+        if (!hasCurrent) {
+            current.reset(trade);
+            open();
+        } else {
+            current.addTrade(trade);
+        }
+        return true;
+    }
+
+    boolean isLate(long timeMillis) {
+        return timeMillis < closedEnd;
+    }
+
+    // closes the not-ready candle if its bucket has ended by the given time, buckets before the time are closed
+    // even if there were no candles in them
+    void closeUntil(long timeMillis) {
+        if (hasCurrent && timeMillis >= currentEnd) {
+            close(timeMillis);
+        }
+        closedEnd = Math.max(closedEnd, candleSize.startMillis(timeMillis));
+    }
+
+    // start of the bucket the level is closed until, Long.MIN_VALUE if nothing was closed
+    long closedEnd() {
+        return closedEnd;
+    }
+
+    // end of the not-ready candle bucket, Stock.NO_BUCKET if there is no such candle
+    long currentEnd() {
+        return hasCurrent ? currentEnd : Stock.NO_BUCKET;
+    }
+
+    // time is the time of the trade which closed the source candle, it may close this level as well
+    private void addCandle(CandleBuilder candle, long timeMillis) {
+        if (isLate(candle.openTimeMillis)) {
+            foldLate(candle.openPrice, candle.closePrice, candle.minPrice, candle.maxPrice);
+        } else if (!hasCurrent) {
+            current.reset(candle);
+            open();
+        } else {
+            current.addCandle(candle);
+        }
+        if (timeMillis >= currentEnd) {
+            close(timeMillis);
+        }
+    }
+
+    // prices of a closed bucket widen the candle of the first open bucket, the latest price and times are kept.
+    // if there is no such candle, it is opened at the bucket start with the late prices
+    private void foldLate(long openPrice, long closePrice, long minPrice, long maxPrice) {
+        if (!hasCurrent) {
+            current.openTimeMillis = closedEnd;
+            current.closeTimeMillis = closedEnd;
+            current.openPrice = openPrice;
+            current.closePrice = closePrice;
+            current.minPrice = minPrice;
+            current.maxPrice = maxPrice;
+            open();
+        } else {
+            current.minPrice = ScaledPrices.min(current.minPrice, minPrice);
+            current.maxPrice = ScaledPrices.max(current.maxPrice, maxPrice);
+        }
+    }
+
+    private void open() {
+        hasCurrent = true;
+        currentEnd = candleSize.endMillis(candleSize.startMillis(current.openTimeMillis));
+    }
+
+    // targets copy the closed candle before the builder is reused
+    private void close(long timeMillis) {
+        candles.add(current.openTimeMillis, current.closeTimeMillis, current.minPrice, current.maxPrice, current.openPrice, current.closePrice);
+        hasCurrent = false;
+        closedEnd = candleSize.startMillis(timeMillis);
+        for (var target : targets) {
+            target.addCandle(current, timeMillis);
+        }
+    }
+
+    // not-ready candle of this level including not-ready candles of finer levels, null if there were no trades in it.
+    // valid until the next change of the level
+    CandleBuilder liveCandle() {
+        final var sourceCandle = source == null ? null : source.liveCandle();
+        if (sourceCandle == null) {
+            return hasCurrent ? current : null;
+        }
+        if (hasCurrent) {
+            live.reset(current);
+            live.addCandle(sourceCandle);
+        } else {
+            live.reset(sourceCandle);
+        }
+        return live;
+    }
+
+    // closed candles followed by the own not-ready candle of the level
+    CandleSeries capture() {
+        return candles.liveSnapshot(hasCurrent ? current : null);
+    }
+
+    // replaces the state of an empty level with a captured one
+    void restore(CandleSeries captured) {
+        for (var i = 0; i < captured.closedSize(); i++) {
+            candles.add(captured.openTimeMillis(i), captured.closeTimeMillis(i),
+                captured.minPrice(i), captured.maxPrice(i), captured.openPrice(i), captured.closePrice(i));
+        }
+        if (captured.closedSize() > 0) {
+            closedEnd = candleSize.endMillis(candleSize.startMillis(captured.openTimeMillis(captured.closedSize() - 1)));
+        }
+        if (captured.size() > captured.closedSize()) {
+            current.reset(captured.get(captured.closedSize()));
+            open();
+        }
+    }
+
+    // makes the current state visible to readers
+    void publish() {
+        published = candles.liveSnapshot(liveCandle());
+    }
+
+    CandleSeries published() {
+        return published;
+    }
+}
@@ -0,0 +1,189 @@
+package candles.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import static candles.model.CandleStore.CHUNK_BITS;
+import static candles.model.CandleStore.CHUNK_MASK;
+import static candles.model.CandleStore.CHUNK_SIZE;
+import static candles.model.CandleStore.CLOSE_PRICE;
+import static candles.model.CandleStore.CLOSE_TIME;
+import static candles.model.CandleStore.COLUMNS;
+import static candles.model.CandleStore.MAX_PRICE;
+import static candles.model.CandleStore.MIN_PRICE;
+import static candles.model.CandleStore.OPEN_PRICE;
+import static candles.model.CandleStore.OPEN_TIME;
+import static candles.model.CandleStore.fromEpochMillis;
+import static candles.model.CandleStore.toEpochMillis;
+
+// read-only view over candles of a CandleStore taken at some point of time plus optional not-ready candle.
+// sealed candles moved out of the heap go first, candles kept in the heap follow them.
+// Candle objects are created only when requested, primitive accessors allow reading without allocations.
+// immutable, so it may be shared between threads once published
+public class CandleSeries extends AbstractList<Candle> implements RandomAccess {
+
+    public final CandleSize candleSize;
+    // sealed candles shared with the store and index of the first candle of every one of them,
+    // the last start is the amount of all sealed candles
+    private final SealedCandles[] sealed;
+    private final int[] sealedStarts;
+    // chunk ring shared with the store, see CandleStore
+    private final long[][] chunks;
+    private final int firstChunk;
+    // position of the first heap candle counted from the beginning of the first chunk
+    private final int first;
+    // index of the first candle of the view, counted from the first sealed candle
+    private final int offset;
+    // index of the oldest candle kept by the store, counted the same way. the view may start later
+    private final int oldest;
+    private final int closedSize;
+    // columns of the not-ready candle, null if there is none
+    private final long[] live;
+
+    CandleSeries(CandleSize candleSize, SealedCandles[] sealed, int[] sealedStarts, long[][] chunks, int firstChunk, int first,
+                 int offset, int closedSize, Candle liveCandle) {
+        this(candleSize, sealed, sealedStarts, chunks, firstChunk, first, offset, offset, closedSize, liveCandle == null ? null : columns(liveCandle));
+    }
+
+    CandleSeries(CandleSize candleSize, SealedCandles[] sealed, int[] sealedStarts, long[][] chunks, int firstChunk, int first,
+                 int oldest, int offset, int closedSize, long[] live) {
+        this.candleSize = candleSize;
+        this.sealed = sealed;
+        this.sealedStarts = sealedStarts;
+        this.chunks = chunks;
+        this.firstChunk = firstChunk;
+        this.first = first;
+        this.offset = offset;
+        this.oldest = oldest;
+        this.closedSize = closedSize;
+        this.live = live;
+    }
+
+    // view of candles matching the query. candles are ordered by open time, so the range is found by binary search
+    // and the chunks are shared with this series
+    public CandleSeries select(CandleQuery query) {
+        final var withLive = live != null && query.matches(live[OPEN_TIME]);
+        final var to = lowerBound(query.toMillis);
+        final var closedLimit = withLive ? query.limit - 1 : query.limit;
+        final var from = Math.min(Math.max(lowerBound(query.fromMillis), to - closedLimit), to);
+        return new CandleSeries(candleSize, sealed, sealedStarts, chunks, firstChunk, first, oldest, offset + from, to - from, withLive ? live : null);
+    }
+
+    @Override
+    public Candle get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return new Candle(candleSize,
+            fromEpochMillis(openTimeMillis(index)), fromEpochMillis(closeTimeMillis(index)),
+            ScaledPrices.decode(minPrice(index)), ScaledPrices.decode(maxPrice(index)),
+            ScaledPrices.decode(openPrice(index)), ScaledPrices.decode(closePrice(index)));
+    }
+
+    @Override
+    public int size() {
+        return live == null ? closedSize : closedSize + 1;
+    }
+
+    // heap taken by the chunks this series shares with its store, sealed candles are not counted
+    public long heapBytes() {
+        var allocated = 0L;
+        for (var chunk : chunks) {
+            if (chunk != null) {
+                allocated++;
+            }
+        }
+        return allocated * COLUMNS * CHUNK_SIZE * Long.BYTES;
+    }
+
+    // amount of closed candles, the not-ready candle (if any) follows them
+    public int closedSize() {
+        return closedSize;
+    }
+
+    public long openTimeMillis(int index) {
+        return value(OPEN_TIME, index);
+    }
+
+    public long closeTimeMillis(int index) {
+        return value(CLOSE_TIME, index);
+    }
+
+    public long minPrice(int index) {
+        return value(MIN_PRICE, index);
+    }
+
+    public long maxPrice(int index) {
+        return value(MAX_PRICE, index);
+    }
+
+    public long openPrice(int index) {
+        return value(OPEN_PRICE, index);
+    }
+
+    public long closePrice(int index) {
+        return value(CLOSE_PRICE, index);
+    }
+
+    // open time of the oldest closed candle kept by the store when the series was taken, the series has to have closed candles
+    public long oldestOpenTimeMillis() {
+        return globalValue(OPEN_TIME, oldest);
+    }
+
+    private long value(int column, int index) {
+        if (index == closedSize && live != null) {
+            return live[column];
+        }
+        return globalValue(column, offset + index);
+    }
+
+    private long globalValue(int column, int global) {
+        final var sealedSize = sealedStarts[sealed.length];
+        if (global < sealedSize) {
+            return sealedValue(column, global);
+        }
+        final var position = first + global - sealedSize;
+        return chunks[(firstChunk + (position >>> CHUNK_BITS)) & (chunks.length - 1)][column * CHUNK_SIZE + (position & CHUNK_MASK)];
+    }
+
+    private long sealedValue(int column, int global) {
+        // the last block starting at or before the candle
+        var low = 0;
+        var high = sealed.length - 1;
+        while (low < high) {
+            final var middle = (low + high + 1) >>> 1;
+            if (sealedStarts[middle] <= global) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return sealed[low].value(column, global - sealedStarts[low]);
+    }
+
+    // index of the first closed candle opened at or after the given time, closedSize if there is none
+    private int lowerBound(long openTimeMillis) {
+        var low = 0;
+        var high = closedSize;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (value(OPEN_TIME, middle) < openTimeMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long[] columns(Candle candle) {
+        final var columns = new long[COLUMNS];
+        columns[OPEN_TIME] = toEpochMillis(candle.openTime);
+        columns[CLOSE_TIME] = toEpochMillis(candle.closeTime);
+        columns[MIN_PRICE] = ScaledPrices.encode(candle.minPrice);
+        columns[MAX_PRICE] = ScaledPrices.encode(candle.maxPrice);
+        columns[OPEN_PRICE] = ScaledPrices.encode(candle.openPrice);
+        columns[CLOSE_PRICE] = ScaledPrices.encode(candle.closePrice);
+        return columns;
+    }
+}
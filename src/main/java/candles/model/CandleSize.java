@@ -1,12 +1,12 @@
 package candles.model;
 
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Objects;
 
-import static candles.Application.DEFAULT_TIME_ZONE_OFFSET;
+import static candles.model.CandleStore.fromEpochMillis;
+import static candles.model.CandleStore.toEpochMillis;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.HOURS;
 import static java.time.temporal.ChronoUnit.MINUTES;
@@ -18,6 +18,8 @@ public class CandleSize {
 
     public final int size;
     public final ChronoUnit unit;
+    // length of the candle interval, precomputed as it is used for every trade
+    public final long durationMillis;
 
     public CandleSize(int size, ChronoUnit unit) {
         this.size = size;
@@ -28,27 +30,30 @@ public class CandleSize {
         if (higherUnitLength % length != 0) {
             throw new RuntimeException(String.format("tried to create inappropriate candle with unit %s and size %s", unit, size));
         }
+        this.durationMillis = length;
     }
 
     public long getDurationInMillis() {
-        return unit.getDuration().toMillis() * size;
+        return durationMillis;
     }
 
-    // this method truncates time to the candle interval beginning. for example if time is 12:12, candle is 5 minutes, result will be 12:10
-    public LocalDateTime calculateAbsoluteStartDate(LocalDateTime tradeTime) {
-        final var largerChronoUnitTruncation = tradeTime.truncatedTo(getBiggerTimeUnit(this.unit)).toInstant(DEFAULT_TIME_ZONE_OFFSET).toEpochMilli();
-        final var minorChronoUnitTruncation = tradeTime.truncatedTo(this.unit).toInstant(DEFAULT_TIME_ZONE_OFFSET).toEpochMilli();
-        final var delta = minorChronoUnitTruncation - largerChronoUnitTruncation;
-
-        final var intervalSize = this.unit.getDuration().toMillis() * this.size;
+    // truncates epoch millis to the candle interval beginning. the interval divides the bigger unit and bigger units
+    // start at multiples of their length since the epoch (times are in UTC), so flooring by the interval is enough
+    public long startMillis(long epochMillis) {
+        return epochMillis - Math.floorMod(epochMillis, durationMillis);
+    }
 
-        final var intervalsAmount = delta / intervalSize;
+    public long endMillis(long startMillis) {
+        return startMillis + durationMillis;
+    }
 
-        return Instant.ofEpochMilli(largerChronoUnitTruncation + intervalSize * intervalsAmount).atZone(DEFAULT_TIME_ZONE_OFFSET).toLocalDateTime();
+    // this method truncates time to the candle interval beginning. for example if time is 12:12, candle is 5 minutes, result will be 12:10
+    public LocalDateTime calculateAbsoluteStartDate(LocalDateTime tradeTime) {
+        return fromEpochMillis(startMillis(toEpochMillis(tradeTime)));
     }
 
     public LocalDateTime calculateAbsoluteEndDate(LocalDateTime sliceLeftTime) {
-        return sliceLeftTime.plus(unit.getDuration().multipliedBy(size));
+        return fromEpochMillis(endMillis(toEpochMillis(sliceLeftTime)));
     }
 
     public static ChronoUnit getBiggerTimeUnit(ChronoUnit unit) {
@@ -0,0 +1,261 @@
+package candles.model;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static candles.Application.DEFAULT_TIME_ZONE_OFFSET;
+
+// columnar storage of closed candles for a single stock and candle size.
+// times are kept as epoch millis, prices as scaled longs (see ScaledPrices).
+// columns are kept in fixed-size chunks organized as a ring: new chunks are appended at the tail,
+// expired candles are dropped from the head in O(1) and fully expired chunks are released.
+// stored candles are never rewritten and the ring itself is copied on every change (once per chunk),
+// so snapshots are taken in O(1) and stay valid while the store changes.
+// with a tier, full chunks of candles older than the tier allows are sealed into it and dropped from the heap,
+// sealed candles precede heap ones and are subject to retention the same way. one chunk is sealed at a time,
+// it stays in the heap until the tier is done with it, so the writer never waits for the tier.
+// single writer - snapshots have to be safely published to be read by other threads
+public class CandleStore {
+
+    public static final int OPEN_TIME = 0;
+    static final int CLOSE_TIME = 1;
+    static final int MIN_PRICE = 2;
+    static final int MAX_PRICE = 3;
+    static final int OPEN_PRICE = 4;
+    static final int CLOSE_PRICE = 5;
+    public static final int COLUMNS = 6;
+
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final SealedCandles[] NO_SEALED = new SealedCandles[0];
+
+    public final CandleSize candleSize;
+    private final Retention retention;
+    private final String stockName;
+    // null if candles are kept in the heap only
+    private final CandleTier tier;
+    // sealed candles from the oldest and index of the first candle of every one of them, the last start
+    // is the amount of all sealed candles. both are replaced on change as snapshots share them
+    private SealedCandles[] sealed;
+    private int[] sealedStarts;
+    // sealed candles dropped by retention from the first sealed block
+    private int sealedSkip;
+    // the first chunk handed to the tier and the position its candles were sealed from, null if none is being sealed
+    private CompletableFuture<SealedCandles> sealing;
+    private long[] sealingChunk;
+    private int sealingFrom;
+    // ring of chunks, every chunk keeps CHUNK_SIZE values of each column one after another. length is a power of two.
+    // never modified in place as snapshots share it
+    private long[][] chunks;
+    // ring slot of the chunk holding the oldest candle
+    private int firstChunk;
+    private int chunkCount;
+    // position of the oldest candle in the first chunk
+    private int first;
+    // amount of candles in the heap
+    private int size;
+
+    public CandleStore(CandleSize candleSize) {
+        this(candleSize, Retention.UNLIMITED);
+    }
+
+    public CandleStore(CandleSize candleSize, Retention retention) {
+        this(candleSize, retention, null, null);
+    }
+
+    public CandleStore(CandleSize candleSize, Retention retention, String stockName, CandleTier tier) {
+        this.candleSize = candleSize;
+        this.retention = retention;
+        this.stockName = stockName;
+        this.tier = tier;
+        this.sealed = NO_SEALED;
+        this.sealedStarts = new int[1];
+        this.chunks = new long[4][];
+    }
+
+    public void add(Candle candle) {
+        add(toEpochMillis(candle.openTime), toEpochMillis(candle.closeTime),
+            ScaledPrices.encode(candle.minPrice), ScaledPrices.encode(candle.maxPrice),
+            ScaledPrices.encode(candle.openPrice), ScaledPrices.encode(candle.closePrice));
+    }
+
+    // times are epoch millis, prices are encoded by ScaledPrices
+    public void add(long openTime, long closeTime, long minPrice, long maxPrice, long openPrice, long closePrice) {
+        final var position = first + size;
+        if ((position >>> CHUNK_BITS) == chunkCount) {
+            addChunk();
+        }
+        final var chunk = chunk(position);
+        final var offset = position & CHUNK_MASK;
+        chunk[OPEN_TIME * CHUNK_SIZE + offset] = openTime;
+        chunk[CLOSE_TIME * CHUNK_SIZE + offset] = closeTime;
+        chunk[MIN_PRICE * CHUNK_SIZE + offset] = minPrice;
+        chunk[MAX_PRICE * CHUNK_SIZE + offset] = maxPrice;
+        chunk[OPEN_PRICE * CHUNK_SIZE + offset] = openPrice;
+        chunk[CLOSE_PRICE * CHUNK_SIZE + offset] = closePrice;
+        size++;
+
+        applyRetention(openTime);
+        applyTier(openTime);
+    }
+
+    public int size() {
+        return sealedSize() + size;
+    }
+
+    // cheap read-only view of candles stored so far, optionally followed by a not-ready candle
+    public CandleSeries snapshot(Candle liveCandle) {
+        return new CandleSeries(candleSize, sealed, sealedStarts, chunks, firstChunk, first, sealedSkip, size(), liveCandle);
+    }
+
+    // the same with the not-ready candle still being folded, null if there is none
+    CandleSeries liveSnapshot(CandleBuilder liveCandle) {
+        return new CandleSeries(candleSize, sealed, sealedStarts, chunks, firstChunk, first, sealedSkip, sealedSkip, size(),
+            liveCandle == null ? null : liveCandle.columns());
+    }
+
+    public CandleSeries snapshot(Candle liveCandle, CandleQuery query) {
+        return snapshot(liveCandle).select(query);
+    }
+
+    private void applyRetention(long newestOpenTime) {
+        if (retention.maxCount > 0) {
+            while (size() > retention.maxCount) {
+                removeFirst();
+            }
+        }
+        if (retention.maxAgeMillis > 0) {
+            final var oldestAllowed = newestOpenTime - retention.maxAgeMillis;
+            while (size() > 0 && firstOpenTime() < oldestAllowed) {
+                removeFirst();
+            }
+        }
+    }
+
+    private void applyTier(long newestOpenTime) {
+        if (tier == null) {
+            return;
+        }
+        final var sealBefore = newestOpenTime - tier.sealAfterMillis();
+        while (true) {
+            // the chunk being filled stays in the heap, the others are full, so their last candles are the newest
+            if (sealing == null) {
+                if (chunkCount <= 1 || chunk(CHUNK_MASK)[OPEN_TIME * CHUNK_SIZE + CHUNK_MASK] >= sealBefore) {
+                    return;
+                }
+                sealingChunk = chunk(first);
+                sealingFrom = first;
+                sealing = tier.seal(stockName, candleSize, sealingChunk, first, CHUNK_SIZE - first);
+            }
+            if (!sealing.isDone()) {
+                return;
+            }
+            completeSealing();
+        }
+    }
+
+    private void completeSealing() {
+        final var completed = sealing;
+        sealing = null;
+        final SealedCandles block;
+        try {
+            block = completed.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(String.format("unable to seal candles of %s", stockName), e.getCause());
+        }
+        // retention may have dropped the candles while they were being sealed
+        if (chunk(0) != sealingChunk) {
+            tier.release(block);
+            return;
+        }
+        if (sealed.length == 0) {
+            sealedSkip = first - sealingFrom;
+        }
+        sealed = Arrays.copyOf(sealed, sealed.length + 1);
+        sealed[sealed.length - 1] = block;
+        sealedStarts = starts(sealed);
+        size -= CHUNK_SIZE - first;
+        releaseFirstChunk();
+    }
+
+    private int sealedSize() {
+        return sealedStarts[sealed.length] - sealedSkip;
+    }
+
+    private long firstOpenTime() {
+        if (sealedSize() > 0) {
+            return sealed[0].value(OPEN_TIME, sealedSkip);
+        }
+        return chunk(first)[OPEN_TIME * CHUNK_SIZE + first];
+    }
+
+    private void removeFirst() {
+        if (sealedSize() > 0) {
+            sealedSkip++;
+            if (sealedSkip == sealed[0].size) {
+                tier.release(sealed[0]);
+                sealed = Arrays.copyOfRange(sealed, 1, sealed.length);
+                sealedStarts = starts(sealed);
+                sealedSkip = 0;
+            }
+            return;
+        }
+        first++;
+        size--;
+        if (first == CHUNK_SIZE) {
+            releaseFirstChunk();
+        }
+    }
+
+    private void releaseFirstChunk() {
+        final var released = chunks.clone();
+        released[firstChunk] = null;
+        chunks = released;
+        firstChunk = (firstChunk + 1) & (chunks.length - 1);
+        chunkCount--;
+        first = 0;
+    }
+
+    private static int[] starts(SealedCandles[] blocks) {
+        final var starts = new int[blocks.length + 1];
+        for (var i = 0; i < blocks.length; i++) {
+            starts[i + 1] = starts[i] + blocks[i].size;
+        }
+        return starts;
+    }
+
+    private void addChunk() {
+        final long[][] added;
+        if (chunkCount == chunks.length) {
+            added = new long[chunks.length * 2][];
+            for (var i = 0; i < chunkCount; i++) {
+                added[i] = chunks[(firstChunk + i) & (chunks.length - 1)];
+            }
+            firstChunk = 0;
+        } else {
+            added = chunks.clone();
+        }
+        added[(firstChunk + chunkCount) & (added.length - 1)] = new long[COLUMNS * CHUNK_SIZE];
+        chunks = added;
+        chunkCount++;
+    }
+
+    // position is counted from the beginning of the first chunk
+    private long[] chunk(int position) {
+        return chunks[(firstChunk + (position >>> CHUNK_BITS)) & (chunks.length - 1)];
+    }
+
+    static long toEpochMillis(LocalDateTime time) {
+        return time.toInstant(DEFAULT_TIME_ZONE_OFFSET).toEpochMilli();
+    }
+
+    static LocalDateTime fromEpochMillis(long epochMillis) {
+        final var seconds = Math.floorDiv(epochMillis, 1000);
+        final var nanos = Math.floorMod(epochMillis, 1000) * 1_000_000;
+        return LocalDateTime.ofEpochSecond(seconds, nanos, DEFAULT_TIME_ZONE_OFFSET);
+    }
+}
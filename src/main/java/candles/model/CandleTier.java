@@ -0,0 +1,18 @@
+package candles.model;
+
+import java.util.concurrent.CompletableFuture;
+
+// storage of closed candles which are old enough to be moved out of the heap. called by stock writers
+public interface CandleTier {
+
+    // candles opened earlier than this before the newest candle are sealed
+    long sealAfterMillis();
+
+    // stores count candles of the chunk starting from the given position (see CandleStore for the chunk layout).
+    // the chunk is full, so it is never changed again and may be sealed in the background, the writer keeps
+    // the candles in the heap until the returned future completes
+    CompletableFuture<SealedCandles> seal(String stockName, CandleSize candleSize, long[] chunk, int from, int count);
+
+    // called when sealed candles are dropped by retention
+    void release(SealedCandles candles);
+}
@@ -0,0 +1,43 @@
+package candles.model;
+
+// trades of a stock falling into the same conflation bucket, folded into a single ring slot while the ring is full.
+// the inherited time and price are the ones of the latest trade, so it closes candles the way the latest trade would.
+// conflation buckets fit into buckets of every candle size, so candles built from the open, lowest, highest
+// and latest trades are the same as the ones built from all of them
+class ConflatedTrades extends Trade {
+
+    final long bucketStartMillis;
+    private final long openTimeMillis;
+    private final long openPrice;
+    private long minPrice;
+    private long maxPrice;
+    private int count;
+
+    ConflatedTrades(Trade first, long bucketStartMillis) {
+        super(first.stockName, first.timeMillis, first.price);
+        this.bucketStartMillis = bucketStartMillis;
+        this.openTimeMillis = first.timeMillis;
+        this.openPrice = first.price;
+        this.minPrice = first.price;
+        this.maxPrice = first.price;
+        this.count = 1;
+    }
+
+    void add(Trade trade) {
+        timeMillis = trade.timeMillis;
+        price = trade.price;
+        minPrice = ScaledPrices.min(minPrice, trade.price);
+        maxPrice = ScaledPrices.max(maxPrice, trade.price);
+        count++;
+    }
+
+    // called by the writer, returns false if the trades came after their candle was closed
+    boolean addTo(Stock stock) {
+        if (count > 1) {
+            stock.addTrade(new Trade(stockName, openTimeMillis, openPrice));
+            stock.addTrade(new Trade(stockName, openTimeMillis, minPrice));
+            stock.addTrade(new Trade(stockName, openTimeMillis, maxPrice));
+        }
+        return stock.addTrade(this);
+    }
+}
@@ -0,0 +1,143 @@
+package candles.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+// candles of sizes which are not aggregated from trades, rolled up on request from the coarsest aggregated size
+// dividing them. closed candles rolled up once are kept and extended by candles of the source closed since, so
+// a request folds only source candles of the not-ready candle. kept candles of the least recently requested
+// stocks and sizes are evicted over the capacity
+class DerivedCandles {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final List<CandleSize> sources;
+    private final Map<CandleSize, Retention> retention;
+    private final int capacity;
+    // access ordered, so the eldest entry is the least recently requested one
+    private final LinkedHashMap<Key, Derived> derived = new LinkedHashMap<>(16, 0.75f, true);
+
+    DerivedCandles(List<CandleSize> sources, Map<CandleSize, Retention> retention, int capacity) {
+        if (capacity <= 0) {
+            throw new RuntimeException(String.format("tried to create derived candles with inappropriate capacity %s", capacity));
+        }
+        this.sources = sources;
+        this.retention = retention;
+        this.capacity = capacity;
+    }
+
+    // empty if none of the aggregated sizes divides the candle size
+    Optional<CandleSeries> getCandles(Stock stock, CandleSize candleSize, CandleQuery query) {
+        final var source = sourceOf(candleSize);
+        if (source == null) {
+            return Optional.empty();
+        }
+        final var entry = entry(new Key(stock.stockName, candleSize), source);
+        return Optional.of(entry.candles(stock.getCandles(source)).select(query));
+    }
+
+    // the coarsest aggregated size which candles fit into candles of the given size
+    CandleSize sourceOf(CandleSize candleSize) {
+        CandleSize source = null;
+        for (var candidate : sources) {
+            if (candidate.durationMillis < candleSize.durationMillis && candleSize.durationMillis % candidate.durationMillis == 0
+                && (source == null || candidate.durationMillis > source.durationMillis)) {
+                source = candidate;
+            }
+        }
+        return source;
+    }
+
+    int size() {
+        synchronized (derived) {
+            return derived.size();
+        }
+    }
+
+    private Derived entry(Key key, CandleSize source) {
+        synchronized (derived) {
+            var entry = derived.get(key);
+            if (entry == null) {
+                entry = new Derived(key.candleSize, retention.getOrDefault(source, Retention.UNLIMITED));
+                derived.put(key, entry);
+                if (derived.size() > capacity) {
+                    final var eldest = derived.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            return entry;
+        }
+    }
+
+    // closed candles of a stock and size rolled up so far
+    private static class Derived {
+        final CandleSize candleSize;
+        final CandleStore candles;
+        // open time of the latest source candle rolled up into a closed candle
+        long lastFolded = Long.MIN_VALUE;
+        final CandleBuilder pending;
+        final CandleBuilder next;
+
+        Derived(CandleSize candleSize, Retention retention) {
+            this.candleSize = candleSize;
+            // there are at most as many derived candles as source ones
+            this.candles = new CandleStore(candleSize, retention);
+            this.pending = new CandleBuilder(candleSize);
+            this.next = new CandleBuilder(candleSize);
+        }
+
+        // a candle is closed once a source candle of a later candle appears, the last one is not-ready
+        synchronized CandleSeries candles(CandleSeries source) {
+            final var folded = source.select(new CandleQuery(lastFolded + 1, Long.MAX_VALUE, Integer.MAX_VALUE));
+            var hasPending = false;
+            var pendingStart = 0L;
+            var pendingLast = 0L;
+            for (var i = 0; i < folded.size(); i++) {
+                final var start = candleSize.startMillis(folded.openTimeMillis(i));
+                if (hasPending && start != pendingStart) {
+                    candles.add(pending.openTimeMillis, pending.closeTimeMillis, pending.minPrice, pending.maxPrice, pending.openPrice, pending.closePrice);
+                    lastFolded = pendingLast;
+                    hasPending = false;
+                }
+                next.reset(folded, i);
+                if (hasPending) {
+                    pending.addCandle(next);
+                } else {
+                    pending.reset(next);
+                    pendingStart = start;
+                    hasPending = true;
+                }
+                pendingLast = folded.openTimeMillis(i);
+            }
+            // closed candles of the source may be followed by more candles of the same candle
+            return candles.liveSnapshot(hasPending ? pending : null);
+        }
+    }
+
+    private static class Key {
+        final String stockName;
+        final CandleSize candleSize;
+
+        Key(String stockName, CandleSize candleSize) {
+            this.stockName = stockName;
+            this.candleSize = candleSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key that = (Key) o;
+            return Objects.equals(stockName, that.stockName) && Objects.equals(candleSize, that.candleSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stockName, candleSize);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package candles.model;
+
+// what a shard does with a trade offered while its ring is full
+public enum IngestPolicy {
+    // the producer waits for the writer, so the feed is read slower
+    BLOCK,
+    // trades of a stock are folded together until there is room, candles come out the same
+    CONFLATE,
+    // the trade is dropped and counted, it is not journaled either
+    DROP
+}
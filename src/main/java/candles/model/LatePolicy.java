@@ -0,0 +1,9 @@
+package candles.model;
+
+// what a shard does with a trade coming after its candle has been closed, such trades are counted either way
+public enum LatePolicy {
+    // its prices widen the next candle of the stock, so no trade is lost
+    FOLD,
+    // the trade is dropped
+    DROP
+}
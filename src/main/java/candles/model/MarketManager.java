@@ -1,41 +1,188 @@
 package candles.model;
 
+import candles.metrics.Metrics;
+
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-
-import static java.util.concurrent.Executors.newScheduledThreadPool;
+import java.util.concurrent.atomic.AtomicReference;
 
+// stocks are spread over shards by name, every shard aggregates its stocks on a single writer thread.
+// trades of a stock always go to the same shard, so their order is kept.
+// trades are numbered in the order they are processed, snapshots are taken at some trade sequence
 public class MarketManager {
 
+    public static final int DEFAULT_RING_SIZE = 1 << 16;
+
+    public static final Duration DEFAULT_CLOSE_DELAY = Duration.ofSeconds(1);
+
     private final Map<String, Stock> market;
 
     private final List<CandleSize> candleUnits;
 
-    private final ScheduledExecutorService scheduler;
+    private final Map<CandleSize, Retention> retention;
+
+    private final CandleTier tier;
+
+    private final MarketShard[] shards;
+
+    // sequence of the next processed trade, owned by the producer
+    private long sequence;
+
+    // snapshot to be marked by the producer with the next trade
+    private final AtomicReference<SnapshotRequest> pendingSnapshot;
+
+    // candles of sizes not aggregated from trades, rolled up on request
+    private DerivedCandles derived;
+
+    public MarketManager(List<CandleSize> candleUnits, int shardsAmount) {
+        this(candleUnits, Map.of(), shardsAmount);
+    }
+
+    public MarketManager(List<CandleSize> candleUnits, Map<CandleSize, Retention> retention, int shardsAmount) {
+        this(candleUnits, retention, null, shardsAmount);
+    }
+
+    // tier keeps old candles out of the heap, null if all candles are kept in the heap
+    public MarketManager(List<CandleSize> candleUnits, Map<CandleSize, Retention> retention, CandleTier tier, int shardsAmount) {
+        this(candleUnits, retention, tier, shardsAmount, DEFAULT_RING_SIZE);
+    }
 
-    public MarketManager(List<CandleSize> candleUnits, int threadPoolSize) {
+    // ring size bounds trades waiting for every shard, it has to be a power of two
+    public MarketManager(List<CandleSize> candleUnits, Map<CandleSize, Retention> retention, CandleTier tier, int shardsAmount, int ringSize) {
+        if (shardsAmount <= 0) {
+            throw new RuntimeException(String.format("tried to create market manager with inappropriate amount of shards %s", shardsAmount));
+        }
         this.market = new ConcurrentHashMap<>();
         this.candleUnits = candleUnits;
-        this.scheduler = newScheduledThreadPool(threadPoolSize);
+        this.retention = retention;
+        this.tier = tier;
+        this.shards = new MarketShard[shardsAmount];
+        for (var i = 0; i < shardsAmount; i++) {
+            shards[i] = new MarketShard(i, ringSize, candleUnits, retention, tier, market);
+        }
+        this.pendingSnapshot = new AtomicReference<>();
+        this.derived = new DerivedCandles(candleUnits, retention, DerivedCandles.DEFAULT_CAPACITY);
     }
 
-    public void processMarketEvent(Trade event) {
-        final var stock = market.computeIfAbsent(event.stockName, k -> new Stock(k, candleUnits, scheduler));
-        stock.addTrade(event);
+    // amount of stocks and candle sizes which rolled up candles are kept, has to be called before start
+    public void cacheDerivedCandles(int capacity) {
+        this.derived = new DerivedCandles(candleUnits, retention, capacity);
     }
 
-    public Optional<List<Candle>> getCandles(String stockName, CandleSize candleSize) {
-        if (!candleUnits.contains(candleSize)) {
-            return Optional.empty();
+    // buckets are closed once trades the delay after their end are aggregated, trades of closed buckets are late.
+    // has to be called before start
+    public void closeCandles(Duration delay, LatePolicy latePolicy) {
+        if (delay.isNegative()) {
+            throw new RuntimeException(String.format("tried to close candles with inappropriate delay %s", delay));
+        }
+        for (var shard : shards) {
+            shard.closeDelay(delay.toMillis(), latePolicy);
+        }
+    }
+
+    // what shards do with trades offered while their rings are full, BLOCK by default.
+    // expected to be called by the producer, journaled trades are better replayed with BLOCK
+    public void ingestPolicy(IngestPolicy policy) {
+        for (var shard : shards) {
+            shard.policy(policy);
+        }
+    }
+
+    // restores the state captured by a snapshot, trades following its sequence are expected to be processed next.
+    // has to be called before start
+    public void restore(MarketSnapshot snapshot) {
+        for (var captured : snapshot.stocks) {
+            final var stock = new Stock(captured.stockName, candleUnits, retention, tier);
+            stock.restore(captured);
+            shardOf(stock.stockName).restore(stock);
         }
+        sequence = snapshot.sequence;
+    }
+
+    // exposes the state of the market and its shards, has to be called before start
+    public void instrument(Metrics metrics) {
+        metrics.gauge("candles_active_symbols", "Stocks having received trades", "", market::size);
+        metrics.gauge("candles_derived_series", "Stocks and candle sizes which rolled up candles are kept", "", () -> derived.size());
+        metrics.gauge("candles_storage_heap_bytes", "Heap taken by closed candles of all stocks", "",
+            () -> market.values().stream().mapToLong(Stock::heapBytes).sum());
+        for (var i = 0; i < shards.length; i++) {
+            final var shard = shards[i];
+            final var labels = "shard=\"" + i + "\"";
+            metrics.gauge("candles_shard_queue_depth", "Trades waiting in the shard ring", labels, shard::depth);
+            metrics.counter("candles_shard_trades_total", "Trades aggregated by the shard", labels, shard::processed);
+            metrics.counter("candles_shard_trades_conflated_total", "Trades folded into earlier trades of the same stock while the ring was full", labels, shard::conflated);
+            metrics.counter("candles_shard_trades_dropped_total", "Trades dropped while the ring was full", labels, shard::dropped);
+            metrics.counter("candles_shard_trades_failed_total", "Trades skipped as their aggregation failed", labels, shard::failed);
+            metrics.counter("candles_shard_trades_late_total", "Trades which candles had been closed, folded into the next ones or dropped", labels, shard::late);
+            metrics.gauge("candles_shard_conflated_stocks", "Stocks which conflated trades wait for room in the ring", labels, shard::conflatedStocks);
+            shard.instrument(metrics.summary("candles_shard_batch_seconds", "Time the shard writer spent folding a batch of trades", labels, 1e9));
+        }
+    }
+
+    public void start() {
+        for (var shard : shards) {
+            shard.start();
+        }
+    }
+
+    // stops shard writers and waits for them, trades offered and not aggregated yet are discarded
+    public void stop() {
+        try {
+            for (var shard : shards) {
+                shard.stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // expected to be called by a single thread, returns false if the trade was dropped by an overloaded shard.
+    // dropped trades are not numbered, so sequences follow the trades which are aggregated (and journaled)
+    public boolean processMarketEvent(Trade event) {
+        if (pendingSnapshot.get() != null) {
+            pendingSnapshot.getAndSet(null).mark(sequence, shards);
+        }
+        if (!shardOf(event.stockName).offer(event)) {
+            return false;
+        }
+        sequence++;
+        return true;
+    }
+
+    // price is encoded by ScaledPrices
+    public boolean processMarketEvent(String stockName, long epochMillis, long price) {
+        return processMarketEvent(new Trade(stockName, epochMillis, price));
+    }
+
+    // the snapshot is taken with the next processed trade, so it is not taken while there are no trades
+    public CompletableFuture<MarketSnapshot> requestSnapshot() {
+        final var request = new SnapshotRequest(shards.length);
+        final var previous = pendingSnapshot.compareAndExchange(null, request);
+        return previous == null ? request.result : previous.result;
+    }
+
+    public Optional<CandleSeries> getCandles(String stockName, CandleSize candleSize) {
+        return getCandles(stockName, candleSize, CandleQuery.ALL);
+    }
+
+    // candles of sizes which are not aggregated are rolled up from the aggregated ones,
+    // empty if the stock is unknown or none of the aggregated sizes fits into the candle size
+    public Optional<CandleSeries> getCandles(String stockName, CandleSize candleSize, CandleQuery query) {
         final var stock = market.get(stockName);
-        if (stock != null) {
-            return Optional.of(stock.getCandles(candleSize));
+        if (stock == null) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        if (!candleUnits.contains(candleSize)) {
+            return derived.getCandles(stock, candleSize, query);
+        }
+        return Optional.of(stock.getCandles(candleSize, query));
     }
 
+    private MarketShard shardOf(String stockName) {
+        return shards[Math.floorMod(stockName.hashCode(), shards.length)];
+    }
 }
@@ -0,0 +1,422 @@
+package candles.model;
+
+import candles.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// part of the market owning a subset of stocks. trades are passed through a preallocated ring buffer
+// to the single writer thread of the shard which does all the aggregation, so stocks need no locks.
+// the writer also closes candles at bucket ends driven by its own timer wheel and publishes
+// snapshots of changed stocks after every batch, readers never touch stocks being aggregated.
+// candles are closed by trade time rather than by the clock: a bucket is closed once the shard aggregates a trade
+// the close delay after its end, so a backlog in the ring or a replay of the journal closes candles the same way
+// live trades do. candles of a shard which receives no trades stay open
+// the ring is filled by a single producer. a trade offered while the ring is full is waited for, conflated
+// or dropped depending on the ingest policy, so memory taken by waiting trades is bounded either way
+class MarketShard {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarketShard.class);
+
+    private static final long TICK_MILLIS = 100;
+    private static final int SLOTS = 1024;
+    // returned as the latest trade time while there were no trades
+    private static final long NO_TRADES = Long.MIN_VALUE;
+    // trades folded before changes are published
+    private static final int BATCH_SIZE = 1024;
+
+    private final List<CandleSize> candleUnits;
+    private final Map<CandleSize, Retention> retention;
+    private final CandleTier tier;
+    // stocks of all shards visible to readers
+    private final Map<String, Stock> market;
+
+    private final Trade[] ring;
+    private final int mask;
+    // sequence of the next trade to be put by the producer
+    private final AtomicLong tail;
+    // sequence of the next trade to be taken by the writer
+    private final AtomicLong head;
+    private final Thread writer;
+    private volatile boolean writerSleeping;
+    // snapshot to be captured when the writer reaches the marked position of the ring
+    private volatile Capture capture;
+    // durations of aggregated batches in nanoseconds, null if not measured. set before the writer is started
+    private LatencyHistogram batchDurations;
+    // trades of other stocks may come a bit later than their time, so buckets are closed with a delay.
+    // set before the writer is started
+    private long closeDelayMillis = MarketManager.DEFAULT_CLOSE_DELAY.toMillis();
+    private LatePolicy latePolicy = LatePolicy.FOLD;
+    // set by the producer
+    private volatile IngestPolicy policy = IngestPolicy.BLOCK;
+    // trades of the same stock within it are conflated
+    private final long conflationMillis;
+    // trades of stocks waiting for room in the ring, at most one entry per stock in the order they were conflated.
+    // filled by the producer and taken by the writer once the ring is empty, guarded by the conflation lock.
+    // the producer may wait for room in the ring holding the lock, so the writer only tries it and keeps taking
+    // the ring when it is held
+    private final LinkedHashMap<String, ConflatedTrades> conflated;
+    private final ReentrantLock conflation = new ReentrantLock();
+    private volatile boolean conflating;
+    private volatile int conflatedStocks;
+    private final LongAdder conflatedTrades = new LongAdder();
+    private final LongAdder droppedTrades = new LongAdder();
+    // trades which aggregation has failed, they are skipped
+    private final LongAdder failedTrades = new LongAdder();
+    // trades which candles had been closed by the time they came
+    private final LongAdder lateTrades = new LongAdder();
+
+    // owned by the writer thread
+    private final Map<String, Stock> stocks;
+    private final TimerWheel<Stock> wheel;
+    private final List<Stock> dirty;
+    // the latest time of aggregated trades, candles are closed by it
+    private long latestTradeMillis = NO_TRADES;
+    private long nextTickMillis = NO_TRADES;
+
+    MarketShard(int index, int ringSize, List<CandleSize> candleUnits, Map<CandleSize, Retention> retention, CandleTier tier,
+                Map<String, Stock> market) {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new RuntimeException(String.format("tried to create market shard with inappropriate ring size %s", ringSize));
+        }
+        this.candleUnits = candleUnits;
+        this.retention = retention;
+        this.tier = tier;
+        this.market = market;
+        this.ring = new Trade[ringSize];
+        this.mask = ringSize - 1;
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+        this.stocks = new HashMap<>();
+        // the wheel is advanced by trade time, the first trade moves it to the present
+        this.wheel = new TimerWheel<>(TICK_MILLIS, SLOTS, 0);
+        this.dirty = new ArrayList<>();
+        this.conflationMillis = candleUnits.stream().mapToLong(cs -> cs.durationMillis).reduce(MarketShard::gcd).orElse(0);
+        this.conflated = new LinkedHashMap<>();
+        this.writer = new Thread(this::run, "market-shard-" + index);
+        this.writer.setDaemon(true);
+    }
+
+    void start() {
+        writer.start();
+    }
+
+    // trades not taken by the writer yet are left in the ring
+    void stop() throws InterruptedException {
+        writer.interrupt();
+        writer.join();
+    }
+
+    void instrument(LatencyHistogram batchDurations) {
+        this.batchDurations = batchDurations;
+    }
+
+    void closeDelay(long closeDelayMillis, LatePolicy latePolicy) {
+        this.closeDelayMillis = closeDelayMillis;
+        this.latePolicy = latePolicy;
+    }
+
+    // trades offered and not taken by the writer yet
+    long depth() {
+        return tail.get() - head.get();
+    }
+
+    // trades taken by the writer so far
+    long processed() {
+        return head.get();
+    }
+
+    // trades folded into earlier trades of the same stock
+    long conflated() {
+        return conflatedTrades.sum();
+    }
+
+    long dropped() {
+        return droppedTrades.sum();
+    }
+
+    long late() {
+        return lateTrades.sum();
+    }
+
+    long failed() {
+        return failedTrades.sum();
+    }
+
+    // stocks which conflated trades wait for room in the ring
+    int conflatedStocks() {
+        return conflatedStocks;
+    }
+
+    void policy(IngestPolicy policy) {
+        this.policy = policy;
+    }
+
+    // called by the single producer, returns false if the trade was dropped
+    boolean offer(Trade trade) {
+        final var current = policy;
+        if (current == IngestPolicy.DROP && full()) {
+            droppedTrades.increment();
+            return false;
+        }
+        if (current == IngestPolicy.CONFLATE && (conflating || full())) {
+            conflate(trade);
+            return true;
+        }
+        put(trade);
+        return true;
+    }
+
+    private boolean full() {
+        return tail.get() - head.get() > mask;
+    }
+
+    // waits while the ring is full
+    private void put(Trade trade) {
+        final var sequence = tail.get();
+        while (sequence - head.get() > mask) {
+            LockSupport.parkNanos(1_000);
+        }
+        ring[(int) (sequence & mask)] = trade;
+        tail.set(sequence + 1);
+        if (writerSleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void conflate(Trade trade) {
+        conflation.lock();
+        try {
+            flushConflated(false);
+            final var bucketStart = conflationMillis == 0 ? 0 : trade.timeMillis - Math.floorMod(trade.timeMillis, conflationMillis);
+            final var entry = conflated.get(trade.stockName);
+            if (entry == null && !full()) {
+                put(trade);
+            } else if (entry == null) {
+                conflated.put(trade.stockName, new ConflatedTrades(trade, bucketStart));
+            } else if (entry.bucketStartMillis == bucketStart) {
+                entry.add(trade);
+                conflatedTrades.increment();
+            } else {
+                // the trade may close candles of the conflated ones, so they go first
+                conflated.remove(trade.stockName);
+                put(entry);
+                conflated.put(trade.stockName, new ConflatedTrades(trade, bucketStart));
+            }
+            conflating = !conflated.isEmpty();
+            conflatedStocks = conflated.size();
+        } finally {
+            conflation.unlock();
+        }
+    }
+
+    // moves conflated trades to the ring while it has room or until all of them are moved
+    private void flushConflated(boolean all) {
+        final var iterator = conflated.values().iterator();
+        while (iterator.hasNext() && (all || !full())) {
+            put(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    // conflated trades are taken by the writer directly once the trades offered before them are taken
+    private int takeConflated() {
+        if (!conflating || !conflation.tryLock()) {
+            return 0;
+        }
+        try {
+            if (tail.get() != head.get()) {
+                return 0;
+            }
+            final var taken = conflated.size();
+            for (var entry : conflated.values()) {
+                aggregate(entry);
+            }
+            conflated.clear();
+            conflating = false;
+            conflatedStocks = 0;
+            return taken;
+        } finally {
+            conflation.unlock();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final var processed = processTrades() + takeConflated();
+                if (latestTradeMillis != NO_TRADES && latestTradeMillis - closeDelayMillis >= nextTickMillis) {
+                    final var closeUntil = latestTradeMillis - closeDelayMillis;
+                    wheel.advance(closeUntil, stock -> closeCandles(stock, closeUntil));
+                    nextTickMillis = closeUntil + TICK_MILLIS;
+                }
+                publish();
+                if (processed == 0) {
+                    awaitTrades(TICK_MILLIS);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("unable to aggregate trades", e);
+            }
+        }
+    }
+
+    // stocks restored before the writer is started
+    void restore(Stock stock) {
+        stocks.put(stock.stockName, stock);
+        market.put(stock.stockName, stock);
+        // closed once trades replayed after the snapshot pass the bucket end, so the rest of their trades is not late
+        final var nextBucketEnd = stock.nextBucketEnd();
+        if (nextBucketEnd != Stock.NO_BUCKET) {
+            stock.closeScheduled = true;
+            wheel.schedule(stock, nextBucketEnd);
+        }
+        stock.publish();
+    }
+
+    // called by the producer, trades offered from now on are not included in the snapshot
+    void capture(SnapshotRequest request, int index) {
+        if (conflating) {
+            // conflated trades were offered before, so they are put in front of the mark
+            conflation.lock();
+            try {
+                flushConflated(true);
+                conflating = false;
+                conflatedStocks = 0;
+            } finally {
+                conflation.unlock();
+            }
+        }
+        capture = new Capture(request, index, tail.get());
+    }
+
+    private int processTrades() {
+        final var pending = capture;
+        final var start = batchDurations == null ? 0 : System.nanoTime();
+        final var from = head.get();
+        var to = Math.min(tail.get(), from + BATCH_SIZE);
+        if (pending != null) {
+            to = Math.min(to, pending.ringSequence);
+        }
+        for (var sequence = from; sequence < to; sequence++) {
+            final var index = (int) (sequence & mask);
+            final var trade = ring[index];
+            ring[index] = null;
+            aggregate(trade);
+        }
+        head.set(to);//frees the slots for the producer
+        if (batchDurations != null && to > from) {
+            batchDurations.record(System.nanoTime() - start);
+        }
+        if (pending != null && to == pending.ringSequence) {
+            capture = null;
+            final var captured = new ArrayList<StockSnapshot>(stocks.size());
+            for (var stock : stocks.values()) {
+                captured.add(stock.capture());
+            }
+            pending.request.complete(pending.index, captured);
+        }
+        return (int) (to - from);
+    }
+
+    // a trade which fails is skipped, so it is not taken again
+    private void aggregate(Trade trade) {
+        try {
+            addTrade(trade);
+        } catch (RuntimeException e) {
+            failedTrades.increment();
+            LOG.error("unable to aggregate {}", trade, e);
+        }
+    }
+
+    private void addTrade(Trade trade) {
+        var stock = stocks.get(trade.stockName);
+        if (stock == null) {
+            stock = new Stock(trade.stockName, candleUnits, retention, tier);
+            stocks.put(stock.stockName, stock);
+            market.put(stock.stockName, stock);
+        }
+        latestTradeMillis = Math.max(latestTradeMillis, trade.timeMillis);
+        if (latePolicy == LatePolicy.DROP && stock.isLate(trade)) {
+            lateTrades.increment();
+            return;
+        }
+        final var added = trade instanceof ConflatedTrades ? ((ConflatedTrades) trade).addTo(stock) : stock.addTrade(trade);
+        if (!added) {
+            lateTrades.increment();
+        }
+        markDirty(stock);
+        if (!stock.closeScheduled) {
+            final var bucketEnd = stock.bucketEndMillis(trade);
+            if (bucketEnd != Stock.NO_BUCKET) {
+                stock.closeScheduled = true;
+                wheel.schedule(stock, bucketEnd);
+            }
+        }
+    }
+
+    // a stock which fails to close is left to the next trade, so the rest of the wheel is not stuck behind it
+    private void closeCandles(Stock stock, long timeMillis) {
+        stock.closeScheduled = false;
+        markDirty(stock);
+        final long nextBucketEnd;
+        try {
+            nextBucketEnd = stock.closeCandles(timeMillis);
+        } catch (RuntimeException e) {
+            LOG.error("unable to close candles of {}", stock.stockName, e);
+            return;
+        }
+        if (nextBucketEnd != Stock.NO_BUCKET) {
+            stock.closeScheduled = true;
+            wheel.schedule(stock, nextBucketEnd);
+        }
+    }
+
+    private void markDirty(Stock stock) {
+        if (!stock.dirty) {
+            stock.dirty = true;
+            dirty.add(stock);
+        }
+    }
+
+    private void publish() {
+        for (var stock : dirty) {
+            stock.dirty = false;
+            stock.publish();
+        }
+        dirty.clear();
+    }
+
+    // sleeps until a trade is offered or the next tick comes
+    private void awaitTrades(long timeoutMillis) {
+        writerSleeping = true;
+        if (tail.get() == head.get() && !conflating && timeoutMillis > 0) {//the producer might have offered a trade before seeing the flag
+            LockSupport.parkNanos(timeoutMillis * 1_000_000);
+        }
+        writerSleeping = false;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static class Capture {
+        final SnapshotRequest request;
+        final int index;
+        final long ringSequence;
+
+        Capture(SnapshotRequest request, int index, long ringSequence) {
+            this.request = request;
+            this.index = index;
+            this.ringSequence = ringSequence;
+        }
+    }
+}
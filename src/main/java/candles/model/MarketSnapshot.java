@@ -0,0 +1,15 @@
+package candles.model;
+
+import java.util.List;
+
+// state of all stocks including every trade preceding the sequence and none of the following ones
+public class MarketSnapshot {
+
+    public final long sequence;
+    public final List<StockSnapshot> stocks;
+
+    public MarketSnapshot(long sequence, List<StockSnapshot> stocks) {
+        this.sequence = sequence;
+        this.stocks = stocks;
+    }
+}
@@ -0,0 +1,34 @@
+package candles.model;
+
+import java.util.Map;
+
+// maximal amount of fractional digits of prices per stock. prices are kept as fixed-point longs (see ScaledPrices),
+// a price having more digits than its stock allows is rejected instead of being rounded
+public class PriceScales {
+
+    public static final PriceScales UNLIMITED = new PriceScales(ScaledPrices.MAX_SCALE, Map.of());
+
+    private final int defaultScale;
+    private final Map<String, Integer> scales;
+
+    public PriceScales(int defaultScale, Map<String, Integer> scales) {
+        if (!fits(defaultScale) || !scales.values().stream().allMatch(PriceScales::fits)) {
+            throw new RuntimeException(String.format("tried to create inappropriate price scales %s with default %s", scales, defaultScale));
+        }
+        this.defaultScale = defaultScale;
+        this.scales = Map.copyOf(scales);
+    }
+
+    public int scaleOf(String stockName) {
+        return scales.getOrDefault(stockName, defaultScale);
+    }
+
+    // price is encoded by ScaledPrices
+    public boolean accepts(String stockName, long price) {
+        return ScaledPrices.scale(price) <= scaleOf(stockName);
+    }
+
+    private static boolean fits(int scale) {
+        return scale >= 0 && scale <= ScaledPrices.MAX_SCALE;
+    }
+}
@@ -0,0 +1,43 @@
+package candles.model;
+
+import java.time.Duration;
+import java.util.Objects;
+
+// limits amount of closed candles kept for a single candle size. zero means no limit
+public class Retention {
+
+    public static final Retention UNLIMITED = new Retention(Duration.ZERO, 0);
+
+    // candles opened earlier than maxAge before the newest candle are dropped
+    public final long maxAgeMillis;
+    public final int maxCount;
+
+    public Retention(Duration maxAge, int maxCount) {
+        if (maxAge.isNegative() || maxCount < 0) {
+            throw new RuntimeException(String.format("tried to create inappropriate retention with max age %s and max count %s", maxAge, maxCount));
+        }
+        this.maxAgeMillis = maxAge.toMillis();
+        this.maxCount = maxCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Retention retention = (Retention) o;
+        return maxAgeMillis == retention.maxAgeMillis && maxCount == retention.maxCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxAgeMillis, maxCount);
+    }
+
+    @Override
+    public String toString() {
+        return "Retention{" +
+            "maxAgeMillis=" + maxAgeMillis +
+            ", maxCount=" + maxCount +
+            '}';
+    }
+}
@@ -0,0 +1,151 @@
+package candles.model;
+
+import java.math.BigDecimal;
+
+// prices are fixed-point longs: unscaled value shifted left with the BigDecimal scale packed into the lowest bits,
+// so decoding restores exactly the same BigDecimal (including trailing zeros) as was received.
+// prices are parsed, compared and stored in this form from ingest to storage, BigDecimal is built only for output
+public final class ScaledPrices {
+
+    private static final int SCALE_BITS = 5;
+    private static final long SCALE_MASK = (1L << SCALE_BITS) - 1;
+    public static final int MAX_SCALE = (int) SCALE_MASK;
+    // unscaled value has to survive the shift without losing the sign bit
+    private static final int MAX_UNSCALED_BITS = Long.SIZE - SCALE_BITS - 1;
+    private static final long MAX_UNSCALED = (1L << MAX_UNSCALED_BITS) - 1;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (var i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private ScaledPrices() {
+    }
+
+    public static long encode(BigDecimal price) {
+        final var normalized = price.scale() < 0 ? price.setScale(0) : price;
+        final var unscaled = normalized.unscaledValue();
+        if (normalized.scale() > MAX_SCALE || unscaled.bitLength() > MAX_UNSCALED_BITS) {
+            throw new ArithmeticException(String.format("price %s does not fit into scaled long", price));
+        }
+        return unscaled.longValue() << SCALE_BITS | normalized.scale();
+    }
+
+    // parses a decimal number the same way as new BigDecimal(chars, offset, length) followed by encode, without allocations
+    public static long parse(char[] chars, int offset, int length) {
+        final var end = offset + length;
+        var i = offset;
+        final var negative = i < end && chars[i] == '-';
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            i++;
+        }
+        var unscaled = 0L;
+        var scale = 0;
+        var digits = 0;
+        var fraction = false;
+        for (; i < end; i++) {
+            final var c = chars[i];
+            if (c >= '0' && c <= '9') {
+                unscaled = unscaled * 10 + (c - '0');
+                if (unscaled > MAX_UNSCALED) {
+                    throw tooLong(chars, offset, length);
+                }
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c == 'e' || c == 'E') {
+                scale -= parseExponent(chars, i + 1, end, offset, length);
+                break;
+            } else {
+                throw new NumberFormatException(String.format("price %s is not a number", new String(chars, offset, length)));
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException(String.format("price %s is not a number", new String(chars, offset, length)));
+        }
+        if (scale < 0) {//the same as setScale(0) in encode
+            if (-scale >= POWERS_OF_TEN.length || unscaled > MAX_UNSCALED / POWERS_OF_TEN[-scale]) {
+                throw tooLong(chars, offset, length);
+            }
+            unscaled *= POWERS_OF_TEN[-scale];
+            scale = 0;
+        }
+        if (scale > MAX_SCALE) {
+            throw tooLong(chars, offset, length);
+        }
+        return (negative ? -unscaled : unscaled) << SCALE_BITS | scale;
+    }
+
+    private static int parseExponent(char[] chars, int from, int end, int offset, int length) {
+        var i = from;
+        final var negative = i < end && chars[i] == '-';
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException(String.format("price %s is not a number", new String(chars, offset, length)));
+        }
+        var exponent = 0;
+        for (; i < end; i++) {
+            final var c = chars[i];
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException(String.format("price %s is not a number", new String(chars, offset, length)));
+            }
+            exponent = exponent * 10 + (c - '0');
+            if (exponent > MAX_SCALE + POWERS_OF_TEN.length) {
+                throw tooLong(chars, offset, length);
+            }
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    private static ArithmeticException tooLong(char[] chars, int offset, int length) {
+        return new ArithmeticException(String.format("price %s does not fit into scaled long", new String(chars, offset, length)));
+    }
+
+    // numeric comparison, prices of the same scale are compared without rescaling
+    public static int compare(long scaledPrice, long otherPrice) {
+        final var scale = scale(scaledPrice);
+        final var otherScale = scale(otherPrice);
+        if (scale == otherScale) {
+            return Long.compare(unscaledValue(scaledPrice), unscaledValue(otherPrice));
+        }
+        final var difference = Math.abs(scale - otherScale);
+        final var rescaled = scale < otherScale ? unscaledValue(scaledPrice) : unscaledValue(otherPrice);
+        if (difference < POWERS_OF_TEN.length && Math.abs(rescaled) <= Long.MAX_VALUE / POWERS_OF_TEN[difference]) {
+            final var multiplied = rescaled * POWERS_OF_TEN[difference];
+            return scale < otherScale
+                ? Long.compare(multiplied, unscaledValue(otherPrice))
+                : Long.compare(unscaledValue(scaledPrice), multiplied);
+        }
+        return decode(scaledPrice).compareTo(decode(otherPrice));//rescaled value does not fit into long
+    }
+
+    // the same as BigDecimal.min, the first price is returned if they are equal
+    public static long min(long scaledPrice, long otherPrice) {
+        return compare(scaledPrice, otherPrice) <= 0 ? scaledPrice : otherPrice;
+    }
+
+    // the same as BigDecimal.max, the first price is returned if they are equal
+    public static long max(long scaledPrice, long otherPrice) {
+        return compare(scaledPrice, otherPrice) >= 0 ? scaledPrice : otherPrice;
+    }
+
+    public static BigDecimal decode(long scaledPrice) {
+        return BigDecimal.valueOf(unscaledValue(scaledPrice), scale(scaledPrice));
+    }
+
+    public static long unscaledValue(long scaledPrice) {
+        return scaledPrice >> SCALE_BITS;
+    }
+
+    public static int scale(long scaledPrice) {
+        return (int) (scaledPrice & SCALE_MASK);
+    }
+}
@@ -0,0 +1,26 @@
+package candles.model;
+
+import java.nio.LongBuffer;
+
+// closed candles moved out of the heap by a CandleTier. columns have the same layout as a chunk of CandleStore:
+// size values of each column one after another, ordered by open time. immutable
+public class SealedCandles {
+
+    // identifies where the tier which sealed the candles keeps them, several sealed blocks may share it
+    public final String id;
+    public final int size;
+    private final LongBuffer columns;
+
+    public SealedCandles(String id, int size, LongBuffer columns) {
+        if (columns.capacity() != CandleStore.COLUMNS * size) {
+            throw new RuntimeException(String.format("sealed candles %s are expected to have %s values, but have %s", id, CandleStore.COLUMNS * size, columns.capacity()));
+        }
+        this.id = id;
+        this.size = size;
+        this.columns = columns;
+    }
+
+    long value(int column, int index) {
+        return columns.get(column * size + index);
+    }
+}
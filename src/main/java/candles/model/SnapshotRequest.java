@@ -0,0 +1,43 @@
+package candles.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// snapshot of all shards at the same trade sequence. the producer marks the current position of every shard ring
+// and every writer captures its stocks when it reaches the mark, so ingest is not stopped
+class SnapshotRequest {
+
+    final CompletableFuture<MarketSnapshot> result;
+    private final AtomicReferenceArray<List<StockSnapshot>> parts;
+    private final AtomicInteger remaining;
+    // set by the producer before the shards are marked
+    private long sequence;
+
+    SnapshotRequest(int shardsAmount) {
+        this.result = new CompletableFuture<>();
+        this.parts = new AtomicReferenceArray<>(shardsAmount);
+        this.remaining = new AtomicInteger(shardsAmount);
+    }
+
+    void mark(long sequence, MarketShard[] shards) {
+        this.sequence = sequence;
+        for (var i = 0; i < shards.length; i++) {
+            shards[i].capture(this, i);
+        }
+    }
+
+    // called by the writer of every shard once
+    void complete(int shard, List<StockSnapshot> stocks) {
+        parts.set(shard, stocks);
+        if (remaining.decrementAndGet() == 0) {
+            final var all = new ArrayList<StockSnapshot>();
+            for (var i = 0; i < parts.length(); i++) {
+                all.addAll(parts.get(i));
+            }
+            result.complete(new MarketSnapshot(sequence, all));
+        }
+    }
+}
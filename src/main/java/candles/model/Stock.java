@@ -1,128 +1,147 @@
 package candles.model;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
-import static candles.model.CandleBuilder.candle;
-import static java.lang.Math.min;
-import static java.util.Collections.unmodifiableList;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+// candles of a single stock. trades are folded and candles are closed by the single writer owning the stock
+// (see MarketShard) without any locks, readers get candles published by the writer
 public class Stock {
 
-    private static final Logger LOG = LoggerFactory.getLogger(Stock.class);
+    // returned by closeCandles when the stock has no open candles
+    static final long NO_BUCKET = Long.MIN_VALUE;
 
     public final String stockName;
-    // long-term ready candle storage - possible to push to external storage
-    private final Map<CandleSize, List<Candle>> candles;
-    // storage for not-ready candles
-    private final Map<CandleSize, CandleBuilder> currentCandles;
-    // storage of current trades, queue is periodically emptied to calculate finalized candles
-    private final Map<CandleSize, Deque<Trade>> curTrades;
-    private final Map<CandleSize, Lock> consistencyLocks;
-
-    public Stock(String stockName, List<CandleSize> candleUnits, ScheduledExecutorService scheduler) {
+    // aggregation levels from the finest to the coarsest, coarser levels are folded from closed finer candles
+    private final Map<CandleSize, CandleRollup> rollups;
+    // the same levels and the ones fed by trades directly, arrays are iterated without allocations
+    private final CandleRollup[] levels;
+    private final CandleRollup[] baseRollups;
+    private final CandleSize finestCandleSize;
+
+    // bookkeeping of the owning writer
+    // true while the stock waits for its next bucket end
+    boolean closeScheduled;
+    // true when there are changes not published yet
+    boolean dirty;
+
+    public Stock(String stockName, List<CandleSize> candleUnits) {
+        this(stockName, candleUnits, Map.of());
+    }
+
+    public Stock(String stockName, List<CandleSize> candleUnits, Map<CandleSize, Retention> retention) {
+        this(stockName, candleUnits, retention, null);
+    }
+
+    // tier keeps old candles out of the heap, null if all candles are kept in the heap
+    public Stock(String stockName, List<CandleSize> candleUnits, Map<CandleSize, Retention> retention, CandleTier tier) {
         this.stockName = stockName;
 
-        candles = new ConcurrentHashMap<>();
-        currentCandles = new ConcurrentHashMap<>();
-        curTrades = new ConcurrentHashMap<>();
-        consistencyLocks = new ConcurrentHashMap<>();
-
-        candleUnits.forEach(cu -> {
-            candles.put(cu, new LinkedList<>());
-            final var durationInMillis = min(cu.getDurationInMillis(), 60_000);//euristic for big candles
-            curTrades.put(cu, new ConcurrentLinkedDeque<>());
-            consistencyLocks.put(cu, new ReentrantLock());
-            scheduler.scheduleAtFixedRate(() -> {
-                calculateCandles(cu);
-            }, 1000, durationInMillis, MILLISECONDS);
-        });
+        rollups = CandleRollup.hierarchy(stockName, candleUnits, retention, tier);
+        levels = rollups.values().toArray(new CandleRollup[0]);
+        baseRollups = rollups.values().stream().filter(CandleRollup::isBase).toArray(CandleRollup[]::new);
+        finestCandleSize = candleUnits.stream().min(Comparator.comparingLong(CandleSize::getDurationInMillis)).orElse(null);
     }
 
-    public void addTrade(Trade trade) {
-        curTrades.values().forEach(q -> q.add(trade));
+    // called by the writer only, trades are expected in the order they were received.
+    // returns false if the trade came after its candle was closed and was folded into the next candle
+    public boolean addTrade(Trade trade) {
+        var added = true;
+        for (var rollup : baseRollups) {
+            added &= rollup.addTrade(trade);
+        }
+        return added;
     }
 
-    public List<Candle> getCandles(CandleSize candleSize) {
-        final var lock = consistencyLocks.get(candleSize);
-        lock.lock();
+    // true if a candle the trade falls into has been closed already
+    public boolean isLate(Trade trade) {
+        for (var rollup : baseRollups) {
+            if (rollup.isLate(trade.timeMillis)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        try {
-            calculateCandles(candleSize);
+    // end of the finest bucket the trade falls into, NO_BUCKET if there are no candle sizes
+    long bucketEndMillis(Trade trade) {
+        if (finestCandleSize == null) {
+            return NO_BUCKET;
+        }
+        return finestCandleSize.endMillis(finestCandleSize.startMillis(trade.timeMillis));
+    }
+
+    // closes candles which buckets have ended by the given time, returns the end of the earliest
+    // bucket still open or NO_BUCKET if every candle is closed. called by the writer only
+    public long closeCandles(long timeMillis) {
+        for (var rollup : levels) {//from the finest, so closed candles reach coarser levels first
+            rollup.closeUntil(timeMillis);
+        }
+        return nextBucketEnd();
+    }
 
-            final var lastCandle = currentCandles.get(candleSize);
-            if (lastCandle == null) {
-                return unmodifiableList(candles.get(candleSize));
-            } else {
-                final var res = new LinkedList<>(candles.get(candleSize));
-                res.add(lastCandle.build());
-                return unmodifiableList(res);
+    // end of the earliest bucket still open, NO_BUCKET if every candle is closed
+    long nextBucketEnd() {
+        var nextBucketEnd = NO_BUCKET;
+        for (var rollup : levels) {
+            final var end = rollup.currentEnd();
+            if (end != NO_BUCKET && (nextBucketEnd == NO_BUCKET || end < nextBucketEnd)) {
+                nextBucketEnd = end;
             }
-        } finally {
-            lock.unlock();
         }
+        return nextBucketEnd;
     }
 
-    private void calculateCandles(CandleSize candleSize) {
-        final var lock = consistencyLocks.get(candleSize);
-        lock.lock();
-        try {
-            final var tradesIterator = curTrades.get(candleSize).iterator();//starting from the oldest trade
-
-            if (tradesIterator.hasNext()) {
-                final var firstTrade = tradesIterator.next();
-
-                var existingCandle = currentCandles.get(candleSize);
-                if (existingCandle == null) {
-                    existingCandle = candle(candleSize, firstTrade);
-                    currentCandles.put(candleSize, existingCandle);
-                }
-
-                var existingCandleSliceTimeLeft = candleSize.calculateAbsoluteStartDate(existingCandle.openTime);
-                var existingCandleSliceTimeRight = candleSize.calculateAbsoluteEndDate(existingCandleSliceTimeLeft);
-
-                // case when first trade we scan closes existing current candle
-                if (firstTrade.time.isAfter(existingCandleSliceTimeRight)) {
-                    final var newCandle = existingCandle.build();
-                    candles.get(candleSize).add(newCandle);
-                    existingCandle = currentCandles.put(candleSize, candle(candleSize, firstTrade));
-                    tradesIterator.remove();
-                }
-
-                while (tradesIterator.hasNext()) {
-                    final var trade = tradesIterator.next();
-
-                    existingCandleSliceTimeLeft = candleSize.calculateAbsoluteStartDate(existingCandle.openTime);
-                    existingCandleSliceTimeRight = candleSize.calculateAbsoluteEndDate(existingCandleSliceTimeLeft);
-
-                    // closing current candle
-                    if (trade.time.isAfter(existingCandleSliceTimeRight)) {
-                        final var newCandle = existingCandle.build();
-                        candles.get(candleSize).add(newCandle);
-                        existingCandle = candle(candleSize, trade);
-                        currentCandles.put(candleSize, existingCandle);
-                        tradesIterator.remove();
-                        continue;
-                    }
-                    existingCandle = existingCandle.addTrade(trade);
-                    currentCandles.put(candleSize, existingCandle);
-                    tradesIterator.remove();
-                }
+    // makes candles folded so far visible to readers. called by the writer only
+    public void publish() {
+        for (var rollup : levels) {
+            rollup.publish();
+        }
+    }
+
+    // called by the writer only, captured series are immutable
+    public StockSnapshot capture() {
+        final var levels = new LinkedHashMap<CandleSize, CandleSeries>();
+        rollups.forEach((candleSize, rollup) -> levels.put(candleSize, rollup.capture()));
+        return new StockSnapshot(stockName, levels);
+    }
+
+    // restores levels of a new stock, levels which are not configured any more are skipped.
+    // all levels were closed until the same time, which is at least the end of the latest closed candle of any level
+    void restore(StockSnapshot snapshot) {
+        snapshot.levels.forEach((candleSize, captured) -> {
+            final var rollup = rollups.get(candleSize);
+            if (rollup != null) {
+                rollup.restore(captured);
             }
-        } finally {
-            lock.unlock();
+        });
+        var closedUntil = Long.MIN_VALUE;
+        for (var rollup : levels) {
+            closedUntil = Math.max(closedUntil, rollup.closedEnd());
+        }
+        if (closedUntil != Long.MIN_VALUE) {
+            closeCandles(closedUntil);
         }
     }
 
+    // heap taken by closed candles as of the last publish, may be called from any thread
+    public long heapBytes() {
+        var bytes = 0L;
+        for (var rollup : levels) {
+            bytes += rollup.published().heapBytes();
+        }
+        return bytes;
+    }
+
+    public CandleSeries getCandles(CandleSize candleSize) {
+        return getCandles(candleSize, CandleQuery.ALL);
+    }
+
+    // may be called from any thread, returns candles as of the last publish
+    public CandleSeries getCandles(CandleSize candleSize, CandleQuery query) {
+        return rollups.get(candleSize).published().select(query);
+    }
+
 }
@@ -0,0 +1,16 @@
+package candles.model;
+
+import java.util.Map;
+
+// state of a stock: closed candles of every candle size followed by the not-ready candle of that size.
+// for coarser sizes the not-ready candle contains only closed candles of the finer size it is folded from
+public class StockSnapshot {
+
+    public final String stockName;
+    public final Map<CandleSize, CandleSeries> levels;
+
+    public StockSnapshot(String stockName, Map<CandleSize, CandleSeries> levels) {
+        this.stockName = stockName;
+        this.levels = levels;
+    }
+}
@@ -0,0 +1,92 @@
+package candles.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// hashed timer wheel: deadlines are spread by tick over a ring of slots and every tick visits only its own slot,
+// so the cost does not depend on amount of scheduled tasks. deadlines further than one revolution stay in their slot
+// until their round comes. tasks may be scheduled from any thread, advance is called by a single thread
+public class TimerWheel<T> {
+
+    private final long tickMillis;
+    private final List<List<Entry<T>>> slots;
+    private final int mask;
+    // tasks scheduled since the last advance, moved to the slots by the advancing thread
+    private final Queue<Entry<T>> pending;
+    private long currentTick;
+
+    public TimerWheel(long tickMillis, int slotsAmount, long startMillis) {
+        if (tickMillis <= 0 || Integer.bitCount(slotsAmount) != 1) {
+            throw new RuntimeException(String.format("tried to create inappropriate timer wheel with tick %s and %s slots", tickMillis, slotsAmount));
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotsAmount);
+        for (var i = 0; i < slotsAmount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.mask = slotsAmount - 1;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    public void schedule(T task, long deadlineMillis) {
+        pending.add(new Entry<>(task, deadlineMillis / tickMillis));
+    }
+
+    // passes every task which deadline is not after now to expired
+    public void advance(long nowMillis, Consumer<T> expired) {
+        transferPending();
+        final var nowTick = nowMillis / tickMillis;
+        if (nowTick - currentTick > mask) {
+            // the wheel was not advanced for more than a revolution, every slot has to be checked anyway
+            slots.forEach(slot -> expire(slot, nowTick, expired));
+        } else {
+            for (var tick = currentTick; tick <= nowTick; tick++) {
+                expire(slots.get((int) (tick & mask)), nowTick, expired);
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick + 1);
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void transferPending() {
+        Entry<T> entry;
+        while ((entry = pending.poll()) != null) {
+            final var tick = Math.max(entry.tick, currentTick);
+            slots.get((int) (tick & mask)).add(entry);
+        }
+    }
+
+    private static <T> void expire(List<Entry<T>> slot, long nowTick, Consumer<T> expired) {
+        if (slot.isEmpty()) {
+            return;
+        }
+        // removes expired entries in place keeping the order of the rest
+        var kept = 0;
+        for (var i = 0; i < slot.size(); i++) {
+            final var entry = slot.get(i);
+            if (entry.tick <= nowTick) {
+                expired.accept(entry.task);
+            } else {
+                slot.set(kept++, entry);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private static class Entry<T> {
+        final T task;
+        final long tick;
+
+        Entry(T task, long tick) {
+            this.task = task;
+            this.tick = tick;
+        }
+    }
+}
@@ -4,22 +4,28 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Comparator;
 
-import static java.util.Comparator.comparing;
+import static candles.model.CandleStore.fromEpochMillis;
+import static candles.model.CandleStore.toEpochMillis;
 
 public class Trade implements Comparable<Trade> {
 
     public String stockName;
-    public LocalDateTime time;
-    public BigDecimal price;
+    public long timeMillis;
+    // fixed-point price encoded by ScaledPrices
+    public long price;
 
-    private static final Comparator<Trade> COMPARATOR = comparing((Trade entry) -> entry.time);
+    private static final Comparator<Trade> COMPARATOR = Comparator.comparingLong((Trade entry) -> entry.timeMillis);
 
-    public Trade(String stockName, LocalDateTime time, BigDecimal price) {
+    public Trade(String stockName, long timeMillis, long price) {
         this.stockName = stockName;
-        this.time = time;
+        this.timeMillis = timeMillis;
         this.price = price;
     }
 
+    public Trade(String stockName, LocalDateTime time, BigDecimal price) {
+        this(stockName, toEpochMillis(time), ScaledPrices.encode(price));
+    }
+
     @Override
     public int compareTo(Trade that) {
         return COMPARATOR.compare(this, that);
@@ -29,8 +35,8 @@ public class Trade implements Comparable<Trade> {
     public String toString() {
         return "Trade{" +
             "stockName='" + stockName + '\'' +
-            ", time=" + time +
-            ", price=" + price +
+            ", time=" + fromEpochMillis(timeMillis) +
+            ", price=" + ScaledPrices.decode(price) +
             '}';
     }
 }
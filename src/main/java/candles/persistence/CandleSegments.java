@@ -0,0 +1,192 @@
+package candles.persistence;
+
+import candles.model.CandleSize;
+import candles.model.CandleTier;
+import candles.model.SealedCandles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static candles.model.CandleStore.COLUMNS;
+import static candles.model.CandleStore.OPEN_TIME;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// keeps sealed candles in immutable blocks of segment files, one directory per stock and candle size.
+// a block starts with a header holding amount of candles and their time range (open times of the first and
+// the last candles), columns follow in the same layout as in the heap, so the open time column is the time index.
+// blocks of a stock and candle size are appended to the same segment until it is full, every segment is mapped
+// into memory once, so cold candles are served from the page cache instead of the heap without a mapping per block.
+// blocks are written by a single background sealer, which also owns the segments, so writers never touch the disk
+public class CandleSegments implements CandleTier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CandleSegments.class);
+
+    static final String SUFFIX = ".candles";
+    static final int MAGIC = 0x43534547;
+    // magic, amount of candles, first and last open times, padded to keep columns aligned
+    static final int HEADER_SIZE = 32;
+    // holds 85 full chunks of CandleStore
+    static final int SEGMENT_SIZE = 4 << 20;
+
+    private final Path directory;
+    private final long sealAfterMillis;
+    private final int segmentSize;
+    private final Executor sealer;
+    // segments being appended, by directory of the stock and candle size. used by the sealer only
+    private final Map<Path, Segment> current;
+    // segments holding blocks which are not released yet, by file. used by the sealer only
+    private final Map<String, Segment> segments;
+
+    public CandleSegments(Path directory, Duration sealAfter) {
+        this(directory, sealAfter, SEGMENT_SIZE, Executors.newSingleThreadExecutor(task -> {
+            final var thread = new Thread(task, "candle-sealer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    CandleSegments(Path directory, Duration sealAfter, int segmentSize, Executor sealer) {
+        if (sealAfter.isNegative() || sealAfter.isZero()) {
+            throw new RuntimeException(format("tried to create candle segments with inappropriate seal age %s", sealAfter));
+        }
+        this.directory = directory;
+        this.sealAfterMillis = sealAfter.toMillis();
+        this.segmentSize = segmentSize;
+        this.sealer = sealer;
+        this.current = new HashMap<>();
+        this.segments = new HashMap<>();
+        clear();
+    }
+
+    @Override
+    public long sealAfterMillis() {
+        return sealAfterMillis;
+    }
+
+    @Override
+    public CompletableFuture<SealedCandles> seal(String stockName, CandleSize candleSize, long[] chunk, int from, int count) {
+        final var segmentsDirectory = directory
+            .resolve(URLEncoder.encode(stockName, UTF_8))
+            .resolve(candleSize.size + "_" + candleSize.unit.name());
+        return CompletableFuture.supplyAsync(() -> append(segmentsDirectory, chunk, from, count), sealer);
+    }
+
+    // the segment is deleted once all of its blocks are released and no more blocks are appended to it
+    @Override
+    public void release(SealedCandles candles) {
+        sealer.execute(() -> {
+            final var segment = segments.get(candles.id);
+            if (--segment.blocks > 0 || current.get(segment.file.getParent()) == segment) {
+                return;
+            }
+            segments.remove(candles.id);
+            delete(segment.file);
+        });
+    }
+
+    private SealedCandles append(Path segmentsDirectory, long[] chunk, int from, int count) {
+        final var chunkSize = chunk.length / COLUMNS;
+        final var firstOpenTime = chunk[OPEN_TIME * chunkSize + from];
+        final var lastOpenTime = chunk[OPEN_TIME * chunkSize + from + count - 1];
+        final var blockSize = HEADER_SIZE + COLUMNS * count * Long.BYTES;
+
+        var segment = current.get(segmentsDirectory);
+        if (segment == null || segment.buffer.remaining() < blockSize) {
+            if (segment != null && segment.blocks == 0) {
+                segments.remove(segment.file.toString());
+                delete(segment.file);
+            }
+            segment = create(segmentsDirectory.resolve(format("%020d%s", firstOpenTime, SUFFIX)), Math.max(segmentSize, blockSize));
+            current.put(segmentsDirectory, segment);
+            segments.put(segment.file.toString(), segment);
+        }
+
+        final var buffer = segment.buffer;
+        final var position = buffer.position();
+        buffer.putInt(MAGIC).putInt(count).putLong(firstOpenTime).putLong(lastOpenTime);
+        buffer.position(position + HEADER_SIZE);
+        for (var column = 0; column < COLUMNS; column++) {
+            buffer.asLongBuffer().put(chunk, column * chunkSize + from, count);
+            buffer.position(buffer.position() + count * Long.BYTES);
+        }
+        segment.blocks++;
+        final var columns = buffer.duplicate()
+            .position(position + HEADER_SIZE)
+            .limit(position + blockSize)
+            .slice()
+            .asReadOnlyBuffer()
+            .asLongBuffer();
+        return new SealedCandles(segment.file.toString(), count, columns);
+    }
+
+    // the whole segment is mapped up front, so its blocks share a single mapping.
+    // mapping stays valid after the channel is closed and even after the file is deleted
+    private static Segment create(Path file, int size) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (var channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to create candle segment %s", file), e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.error("unable to delete candle segment {}", file, e);
+        }
+    }
+
+    // candles are rebuilt from the snapshot and the journal on startup, so segments of the previous run are not needed
+    private void clear() {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder())
+                .filter(file -> !file.equals(directory))
+                .forEach(file -> {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(format("unable to delete %s", file), e);
+                    }
+                });
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to clear candle segments directory %s", directory), e);
+        }
+    }
+
+    private static class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        // blocks appended and not released yet
+        int blocks;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
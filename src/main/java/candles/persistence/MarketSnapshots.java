@@ -0,0 +1,320 @@
+package candles.persistence;
+
+import candles.model.Candle;
+import candles.model.CandleSeries;
+import candles.model.CandleSize;
+import candles.model.CandleStore;
+import candles.model.MarketManager;
+import candles.model.MarketSnapshot;
+import candles.model.ScaledPrices;
+import candles.model.StockSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static candles.Application.DEFAULT_TIME_ZONE_OFFSET;
+import static java.lang.String.format;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// periodic snapshots of the market state, so only trades journaled after the latest snapshot are replayed on startup.
+// the state is captured by shard writers in O(stocks) and written by the snapshot thread, so ingest is not stopped.
+// columns of closed candles are written as zig-zag varint deltas, which takes a few bytes per value for regular candles.
+// a snapshot is forced to disk before it replaces the previous one, and the previous one is kept together with
+// the journal following it, so an unreadable latest snapshot falls back to it
+public class MarketSnapshots {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarketSnapshots.class);
+
+    static final String SUFFIX = ".snapshot";
+    private static final String LOCK = "snapshots.lock";
+    private static final int MAGIC = 0x534e4150;
+    private static final int VERSION = 1;
+    private static final int COLUMNS = CandleStore.COLUMNS;
+    // the latest snapshot and the previous one
+    private static final int KEPT = 2;
+
+    private final Path directory;
+    // held until the process exits, see lock
+    private FileLock lock;
+
+    public MarketSnapshots(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to create snapshots directory %s", directory), e);
+        }
+    }
+
+    // takes the directory for this process. the service and a backfill lock it, so a backfill is not written next to
+    // snapshots of a running service, which would restore its own state over it on the next snapshot
+    public void lock() {
+        try {
+            final var channel = FileChannel.open(directory.resolve(LOCK), CREATE, WRITE);
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                throw new RuntimeException(format("tried to use snapshots directory %s locked by another process", directory));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to lock snapshots directory %s", directory), e);
+        }
+    }
+
+    // takes snapshots with the given interval, journal segments preceding the kept snapshots are deleted.
+    // a snapshot is marked by the next trade, so the cycle is skipped while the feed is quiet and the request
+    // is left to be marked by the trade coming later
+    public void start(MarketManager market, TradeJournal journal, Duration interval) {
+        final var thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(interval.toMillis());
+                    final var snapshot = market.requestSnapshot().get(interval.toMillis(), TimeUnit.MILLISECONDS);
+                    write(snapshot);
+                    journal.truncate(oldestSequence());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (TimeoutException e) {
+                    LOG.info("no trades marked snapshot within {}, skipping it", interval);
+                } catch (ExecutionException | RuntimeException e) {
+                    LOG.error("unable to take snapshot", e);
+                }
+            }
+        }, "market-snapshots");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // writes the snapshot next to the previous ones, snapshots older than the kept ones are deleted once it is durable
+    public void write(MarketSnapshot snapshot) {
+        final var start = System.nanoTime();
+        final var file = directory.resolve(format("%020d%s", snapshot.sequence, SUFFIX));
+        final var temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            final var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.sequence);
+            out.writeInt(snapshot.stocks.size());
+            for (var stock : snapshot.stocks) {
+                writeStock(out, stock);
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to write snapshot %s", temporary), e);
+        }
+        try {
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            // the rename itself is durable only once the directory is forced
+            try (var channel = FileChannel.open(directory, READ)) {
+                channel.force(true);
+            }
+            final var snapshots = snapshots();
+            for (var i = 0; i < snapshots.size() - KEPT; i++) {
+                Files.delete(snapshots.get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to replace snapshots with %s", file), e);
+        }
+        LOG.info("snapshot at sequence {} written in {} ms", snapshot.sequence, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // the latest readable snapshot, trades following it are expected to be journaled
+    public Optional<MarketSnapshot> readLatest() {
+        final var snapshots = snapshots();
+        for (var i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return Optional.of(read(snapshots.get(i)));
+            } catch (RuntimeException e) {
+                LOG.error("unable to read snapshot {}, falling back to the previous one", snapshots.get(i), e);
+            }
+        }
+        if (!snapshots.isEmpty()) {
+            throw new RuntimeException(format("none of snapshots in %s is readable", directory));
+        }
+        return Optional.empty();
+    }
+
+    // sequence of the oldest kept snapshot, 0 if there are none
+    public long oldestSequence() {
+        final var snapshots = snapshots();
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        final var name = snapshots.get(0).getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static MarketSnapshot read(Path file) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new RuntimeException(format("snapshot %s is corrupted", file));
+            }
+            final var sequence = in.readLong();
+            final var stocksAmount = in.readInt();
+            final var stocks = new ArrayList<StockSnapshot>(stocksAmount);
+            for (var i = 0; i < stocksAmount; i++) {
+                stocks.add(readStock(in));
+            }
+            return new MarketSnapshot(sequence, stocks);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to read snapshot %s", file), e);
+        }
+    }
+
+    private static void writeStock(DataOutput out, StockSnapshot stock) throws IOException {
+        out.writeUTF(stock.stockName);
+        out.writeInt(stock.levels.size());
+        for (var level : stock.levels.entrySet()) {
+            out.writeInt(level.getKey().size);
+            out.writeUTF(level.getKey().unit.name());
+            final var candles = level.getValue();
+            out.writeInt(candles.closedSize());
+            for (var column = 0; column < COLUMNS; column++) {
+                var previous = 0L;
+                for (var i = 0; i < candles.closedSize(); i++) {
+                    final var value = value(candles, column, i);
+                    writeVarLong(out, zigZag(value - previous));
+                    previous = value;
+                }
+            }
+            final var hasLive = candles.size() > candles.closedSize();
+            out.writeBoolean(hasLive);
+            if (hasLive) {
+                for (var column = 0; column < COLUMNS; column++) {
+                    out.writeLong(value(candles, column, candles.closedSize()));
+                }
+            }
+        }
+    }
+
+    private static StockSnapshot readStock(DataInput in) throws IOException {
+        final var stockName = in.readUTF();
+        final var levelsAmount = in.readInt();
+        final var levels = new LinkedHashMap<CandleSize, CandleSeries>();
+        for (var level = 0; level < levelsAmount; level++) {
+            final var candleSize = new CandleSize(in.readInt(), ChronoUnit.valueOf(in.readUTF()));
+            final var closedSize = in.readInt();
+            final var columns = new long[COLUMNS][closedSize];
+            for (var column = 0; column < COLUMNS; column++) {
+                var previous = 0L;
+                for (var i = 0; i < closedSize; i++) {
+                    previous += unZigZag(readVarLong(in));
+                    columns[column][i] = previous;
+                }
+            }
+            final var candles = new CandleStore(candleSize);
+            for (var i = 0; i < closedSize; i++) {
+                candles.add(columns[0][i], columns[1][i], columns[2][i], columns[3][i], columns[4][i], columns[5][i]);
+            }
+            final var live = in.readBoolean() ? readCandle(in, candleSize) : null;
+            levels.put(candleSize, candles.snapshot(live));
+        }
+        return new StockSnapshot(stockName, levels);
+    }
+
+    private static Candle readCandle(DataInput in, CandleSize candleSize) throws IOException {
+        final var openTime = in.readLong();
+        final var closeTime = in.readLong();
+        return new Candle(candleSize, time(openTime), time(closeTime),
+            ScaledPrices.decode(in.readLong()), ScaledPrices.decode(in.readLong()),
+            ScaledPrices.decode(in.readLong()), ScaledPrices.decode(in.readLong()));
+    }
+
+    private static LocalDateTime time(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), DEFAULT_TIME_ZONE_OFFSET);
+    }
+
+    // columns are numbered as in CandleStore
+    private static long value(CandleSeries candles, int column, int index) {
+        switch (column) {
+            case 0:
+                return candles.openTimeMillis(index);
+            case 1:
+                return candles.closeTimeMillis(index);
+            case 2:
+                return candles.minPrice(index);
+            case 3:
+                return candles.maxPrice(index);
+            case 4:
+                return candles.openPrice(index);
+            default:
+                return candles.closePrice(index);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        var value = 0L;
+        for (var shift = 0; ; shift += 7) {
+            final var b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // snapshot files ordered by sequence
+    private List<Path> snapshots() {
+        try (var files = Files.list(directory)) {
+            return files
+                .filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to list snapshots directory %s", directory), e);
+        }
+    }
+}
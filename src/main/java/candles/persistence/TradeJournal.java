@@ -0,0 +1,310 @@
+package candles.persistence;
+
+import candles.integration.TradeConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// append-only journal of received trades. records are written to memory mapped segment files of a fixed size,
+// so appending a trade is a copy into the page cache without system calls and survives a crash of the process.
+// the flusher thread forces appended records to disk once per flush interval, so every record
+// appended during the interval is committed by the same force.
+// segments are named after the sequence of their first trade and are self-contained: every symbol is defined
+// by a record of the segment before its first trade there. trades are appended by a single thread
+public class TradeJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TradeJournal.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final String SUFFIX = ".journal";
+    static final int MAGIC = 0x544a524e;
+    // magic and sequence of the first trade of the segment
+    static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    // record types, every record starts with one. the type is written last, so a torn record reads as the end
+    static final byte END = 0;
+    // symbol id, length of the name and the name in UTF-8
+    static final byte SYMBOL = 1;
+    // symbol id, epoch millis and price encoded by ScaledPrices
+    static final byte TRADE = 2;
+    static final int SYMBOL_RECORD_SIZE = 1 + Integer.BYTES + Short.BYTES;
+    static final int TRADE_RECORD_SIZE = 1 + Integer.BYTES + Long.BYTES + Long.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long flushIntervalMillis;
+    // ids of symbols defined in the current segment
+    private final Map<String, Integer> symbolIds;
+    // segments which are full, forced and closed by the flusher
+    private final Queue<Segment> sealed;
+    private final Thread flusher;
+    private volatile Segment current;
+    private volatile boolean closed;
+    // sequence of the next appended trade
+    private long sequence;
+
+    private TradeJournal(Path directory, int segmentSize, long flushIntervalMillis, long sequence) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.symbolIds = new HashMap<>();
+        this.sealed = new ConcurrentLinkedQueue<>();
+        this.sequence = sequence;
+        this.current = Segment.create(directory.resolve(fileName(sequence)), segmentSize, sequence);
+        this.flusher = new Thread(this::flush, "journal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    // opens the journal in the directory, appended trades continue the sequence of the trades already there
+    public static TradeJournal open(Path directory, int segmentSize, long flushIntervalMillis) {
+        if (segmentSize < HEADER_SIZE + SYMBOL_RECORD_SIZE + Short.MAX_VALUE + TRADE_RECORD_SIZE || flushIntervalMillis <= 0) {
+            throw new RuntimeException(format("tried to open journal with inappropriate segment size %s and flush interval %s", segmentSize, flushIntervalMillis));
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to create journal directory %s", directory), e);
+        }
+        final var sequence = endSequence(directory);
+        final var journal = new TradeJournal(directory, segmentSize, flushIntervalMillis, sequence);
+        journal.flusher.start();
+        LOG.info("journal {} opened at sequence {}", directory, sequence);
+        return journal;
+    }
+
+    // sequence following the last trade journaled in the directory
+    public static long endSequence(Path directory) {
+        final var segments = Files.isDirectory(directory) ? segments(directory) : List.<Path>of();
+        return segments.isEmpty() ? 0 : read(segments.get(segments.size() - 1), Long.MAX_VALUE, (name, time, price) -> {
+        });
+    }
+
+    // price is encoded by ScaledPrices
+    public void append(String stockName, long epochMillis, long scaledPrice) {
+        var symbolId = symbolIds.get(stockName);
+        if (symbolId == null || current.buffer.remaining() < TRADE_RECORD_SIZE) {
+            symbolId = defineSymbol(stockName);
+        }
+        final var buffer = current.buffer;
+        final var position = buffer.position();
+        buffer.putInt(position + 1, symbolId)
+            .putLong(position + 1 + Integer.BYTES, epochMillis)
+            .putLong(position + 1 + Integer.BYTES + Long.BYTES, scaledPrice)
+            .put(position, TRADE);
+        buffer.position(position + TRADE_RECORD_SIZE);
+        sequence++;
+    }
+
+    // sequence of the next appended trade, which is also the amount of trades appended so far
+    public long sequence() {
+        return sequence;
+    }
+
+    // passes trades starting from the given sequence to the consumer in the order they were appended,
+    // returns the sequence following the last trade. expected to be called before appending
+    public long replay(long fromSequence, TradeConsumer consumer) {
+        final var segments = segments(directory);
+        var next = fromSequence;
+        for (var i = 0; i < segments.size(); i++) {
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= fromSequence) {
+                continue;//all trades of the segment precede the requested one
+            }
+            next = Math.max(next, read(segments.get(i), fromSequence, consumer));
+        }
+        return next;
+    }
+
+    // deletes segments holding only trades preceding the given sequence, may be called from any thread
+    public void truncate(long beforeSequence) {
+        final var segments = segments(directory);
+        final var currentFirstSequence = current.firstSequence;
+        for (var i = 0; i + 1 < segments.size(); i++) {
+            final var nextFirstSequence = firstSequence(segments.get(i + 1));
+            if (nextFirstSequence > beforeSequence || nextFirstSequence > currentFirstSequence) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segments.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(format("unable to delete journal segment %s", segments.get(i)), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        forceSealed();
+        current.force();
+        current.close();
+    }
+
+    private int defineSymbol(String stockName) {
+        final var name = stockName.getBytes(UTF_8);
+        if (name.length > Short.MAX_VALUE) {
+            throw new RuntimeException(format("tried to journal symbol with too long name %s", stockName));
+        }
+        if (current.buffer.remaining() < SYMBOL_RECORD_SIZE + name.length + TRADE_RECORD_SIZE) {
+            roll();
+        }
+        final var symbolId = symbolIds.size();
+        final var buffer = current.buffer;
+        final var position = buffer.position();
+        buffer.position(position + 1);
+        buffer.putInt(symbolId).putShort((short) name.length).put(name);
+        buffer.put(position, SYMBOL);
+        symbolIds.put(stockName, symbolId);
+        return symbolId;
+    }
+
+    private void roll() {
+        sealed.add(current);
+        symbolIds.clear();
+        current = Segment.create(directory.resolve(fileName(sequence)), segmentSize, sequence);
+    }
+
+    private void flush() {
+        while (!closed) {
+            try {
+                Thread.sleep(flushIntervalMillis);
+                forceSealed();
+                current.force();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("unable to flush journal", e);
+            }
+        }
+    }
+
+    private void forceSealed() {
+        Segment segment;
+        while ((segment = sealed.poll()) != null) {
+            segment.force();
+            segment.close();
+        }
+    }
+
+    // reads trades of the segment starting from the given sequence, returns the sequence following its last trade
+    public static long read(Path file, long fromSequence, TradeConsumer consumer) {
+        try (var channel = FileChannel.open(file, READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new RuntimeException(format("journal segment %s is corrupted", file));
+            }
+            var sequence = buffer.getLong();
+            final var symbols = new ArrayList<String>();
+            while (buffer.hasRemaining()) {
+                final var type = buffer.get();
+                if (type == SYMBOL && buffer.remaining() >= SYMBOL_RECORD_SIZE - 1) {
+                    buffer.getInt();//ids are assigned in order of definition
+                    final var name = new byte[buffer.getShort()];
+                    buffer.get(name);
+                    symbols.add(new String(name, UTF_8));
+                } else if (type == TRADE && buffer.remaining() >= TRADE_RECORD_SIZE - 1) {
+                    final var symbol = symbols.get(buffer.getInt());
+                    final var epochMillis = buffer.getLong();
+                    final var scaledPrice = buffer.getLong();
+                    if (sequence >= fromSequence) {
+                        consumer.onTrade(symbol, epochMillis, scaledPrice);
+                    }
+                    sequence++;
+                } else {
+                    if (type != END) {
+                        LOG.warn("journal segment {} ends with unexpected record {}", file, type);
+                    }
+                    break;
+                }
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to read journal segment %s", file), e);
+        }
+    }
+
+    // segment files ordered by their first sequence
+    static List<Path> segments(Path directory) {
+        try (var files = Files.list(directory)) {
+            return files
+                .filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                .sorted((a, b) -> Long.compare(firstSequence(a), firstSequence(b)))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to list journal directory %s", directory), e);
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        final var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long firstSequence) {
+        return format("%020d%s", firstSequence, SUFFIX);
+    }
+
+    private static class Segment {
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final long firstSequence;
+
+        private Segment(FileChannel channel, MappedByteBuffer buffer, long firstSequence) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.firstSequence = firstSequence;
+        }
+
+        // an existing file may only be a segment without trades left by the previous run, so it is rewritten
+        static Segment create(Path file, int size, long firstSequence) {
+            try {
+                final var channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+                final var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC).putLong(firstSequence);
+                return new Segment(channel, buffer, firstSequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(format("unable to create journal segment %s", file), e);
+            }
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("unable to close journal segment", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package candles.resources;
+
+// thrown while parsing request parameters, answered with 400 and the message
+class BadRequestException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    BadRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,186 @@
+package candles.resources;
+
+import candles.metrics.LatencyHistogram;
+import candles.metrics.Metrics;
+import candles.model.CandleQuery;
+import candles.model.CandleSize;
+import candles.model.MarketManager;
+import candles.resources.output.CandlesJsonCache;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static spark.Spark.get;
+
+// candles of several stocks of the same candle size in one response. candles of every stock are selected
+// and encoded on a bounded pool in parallel, the response is written in the order of the requested stocks
+// once candles of all of them are ready, so a failure never leaves a truncated document behind.
+// stocks which candles could not be encoded are reported as missing
+public class BatchCandleResource implements Resource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchCandleResource.class);
+
+    static final int MAX_STOCKS = 1000;
+
+    private static final byte[] HEAD = "{\"stocks\":[".getBytes(UTF_8);
+    private static final byte[] MISSING = "],\"missing\":[".getBytes(UTF_8);
+    private static final byte[] TAIL = "]}".getBytes(UTF_8);
+
+    private final MarketManager marketManager;
+    private final CandlesJsonCache cache;
+    private final ExecutorService pool;
+
+    // request durations in nanoseconds
+    private final LatencyHistogram durations;
+
+    public BatchCandleResource(MarketManager marketManager, CandlesJsonCache cache, int parallelism, Metrics metrics) {
+        if (parallelism <= 0) {
+            throw new RuntimeException(String.format("tried to create batch resource with inappropriate parallelism %s", parallelism));
+        }
+        this.marketManager = marketManager;
+        this.cache = cache;
+        final var threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(parallelism, task -> {
+            final var thread = new Thread(task, "batch-candles-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.durations = metrics.summary("candles_http_request_duration_seconds", "Time spent on serving a request",
+            "route=\"/candles\"", 1e9);
+    }
+
+    @Override
+    public void registerRoutes() {
+        get("/candles", getCandles());
+    }
+
+    private Route getCandles() {
+        return (request, response) -> {
+            final var start = System.nanoTime();
+            try {
+                return serveCandles(request, response);
+            } catch (BadRequestException e) {
+                response.status(400);
+                return e.getMessage();
+            } finally {
+                durations.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private Object serveCandles(Request request, Response response) throws IOException {
+        final var stockNames = parseStocks(request.queryParams("stocks"));
+        if (stockNames.isEmpty() || stockNames.size() > MAX_STOCKS) {
+            response.status(400);
+            return "";
+        }
+        final var candleSize = CandleResource.parseCandleSize(request.queryParams("cu"), request.queryParams("l"));
+        final var query = CandleResource.parseQuery(request);
+
+        final var encoding = new ArrayList<CompletableFuture<byte[]>>(stockNames.size());
+        for (var stockName : stockNames) {
+            encoding.add(CompletableFuture.supplyAsync(() -> encode(stockName, candleSize, query), pool));
+        }
+        final var encoded = join(stockNames, encoding);
+
+        final var gzip = CandleResource.acceptsGzip(request.headers("Accept-Encoding"));
+        response.type("application/json");
+        response.header("Vary", "Accept-Encoding");
+        if (gzip) {
+            response.header("Content-Encoding", "gzip");
+        }
+        final var raw = response.raw().getOutputStream();
+        final var out = gzip ? new GZIPOutputStream(raw, 8192) : raw;
+        write(stockNames, encoded, out);
+        // the response is committed, so spark does not write a body of its own
+        out.close();
+        return "";
+    }
+
+    // encoded candles of every stock, null for the ones which have no candles or failed to be encoded
+    static List<byte[]> join(List<String> stockNames, List<CompletableFuture<byte[]>> encoding) {
+        final var encoded = new ArrayList<byte[]>(encoding.size());
+        for (var i = 0; i < encoding.size(); i++) {
+            try {
+                encoded.add(encoding.get(i).join());
+            } catch (RuntimeException e) {
+                LOG.error("unable to encode candles of {}", stockNames.get(i), e);
+                encoded.add(null);
+            }
+        }
+        return encoded;
+    }
+
+    static void write(List<String> stockNames, List<byte[]> encoded, OutputStream out) throws IOException {
+        final var missing = new ArrayList<String>();
+        out.write(HEAD);
+        var first = true;
+        for (var i = 0; i < stockNames.size(); i++) {
+            final var candles = encoded.get(i);
+            if (candles == null) {
+                missing.add(stockNames.get(i));
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            out.write(candles);
+            first = false;
+        }
+        out.write(MISSING);
+        for (var i = 0; i < missing.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(JsonStringEncoder.getInstance().quoteAsUTF8(missing.get(i)));
+            out.write('"');
+        }
+        out.write(TAIL);
+    }
+
+    // the same JSON as the candles of a single stock, null if there are no candles of the stock or the size
+    private byte[] encode(String stockName, CandleSize candleSize, CandleQuery query) {
+        final var candles = marketManager.getCandles(stockName, candleSize, query);
+        if (candles.isEmpty()) {
+            return null;
+        }
+        final var out = new ByteArrayOutputStream(1024);
+        try {
+            cache.write(candles.get(), stockName, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("unable to encode candles of %s", stockName), e);
+        }
+        return out.toByteArray();
+    }
+
+    // stocks are passed comma separated, duplicates are ignored
+    static List<String> parseStocks(String stocks) {
+        if (stocks == null) {
+            return List.of();
+        }
+        return Arrays.stream(stocks.split(","))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .distinct()
+            .collect(Collectors.toList());
+    }
+}
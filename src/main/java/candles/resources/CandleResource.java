@@ -1,22 +1,51 @@
 package candles.resources;
 
+import candles.metrics.LatencyHistogram;
+import candles.metrics.Metrics;
+import candles.model.CandleQuery;
+import candles.model.CandleSeries;
 import candles.model.CandleSize;
 import candles.model.MarketManager;
-import candles.resources.output.JsonCandles;
+import candles.resources.output.CandlesFormat;
+import candles.resources.output.CandlesJsonCache;
+import spark.Request;
+import spark.Response;
 import spark.Route;
 
+import java.io.IOException;
 import java.time.temporal.ChronoUnit;
+import java.util.zip.GZIPOutputStream;
 
-import static candles.Application.OBJECT_MAPPER;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static spark.Spark.get;
 import static spark.Spark.path;
 
 public class CandleResource implements Resource {
 
+    // open time of the latest returned candle in epoch seconds, to be passed as since by the next poll
+    static final String CURSOR_HEADER = "X-Candles-Cursor";
+
     MarketManager marketManager;
 
+    // closed candles are encoded once for all requests
+    private final CandlesJsonCache cache;
+
+    // request durations in nanoseconds
+    private final LatencyHistogram durations;
+
     public CandleResource(MarketManager marketManager) {
+        this(marketManager, new Metrics());
+    }
+
+    public CandleResource(MarketManager marketManager, Metrics metrics) {
+        this(marketManager, new CandlesJsonCache(CandlesJsonCache.DEFAULT_BUDGET_BYTES), metrics);
+    }
+
+    public CandleResource(MarketManager marketManager, CandlesJsonCache cache, Metrics metrics) {
         this.marketManager = marketManager;
+        this.cache = cache;
+        this.durations = metrics.summary("candles_http_request_duration_seconds", "Time spent on serving a request",
+            "route=\"/:stock/candles\"", 1e9);
     }
 
     @Override
@@ -28,21 +57,158 @@ public class CandleResource implements Resource {
 
     private Route getCandles() {
         return (request, response) -> {
-            final var stockName = request.params("stock");
-            final var chronoUnit = ChronoUnit.valueOf(request.queryParams("cu").toUpperCase());
-            final var timeUnitLength = Integer.parseInt(request.queryParams("l"));
+            final var start = System.nanoTime();
+            try {
+                return serveCandles(request, response);
+            } catch (BadRequestException e) {
+                response.status(400);
+                return e.getMessage();
+            } finally {
+                durations.record(System.nanoTime() - start);
+            }
+        };
+    }
 
-            final var candleSize = new CandleSize(timeUnitLength, chronoUnit);
-            final var candles =  marketManager.getCandles(stockName, candleSize);
+    private Object serveCandles(Request request, Response response) throws IOException {
+        final var stockName = request.params("stock");
+        final var candleSize = parseCandleSize(request.queryParams("cu"), request.queryParams("l"));
+        final var candles =  marketManager.getCandles(stockName, candleSize, parseQuery(request));
 
-            if (candles.isPresent()) {
-                final var jsonCandles = new JsonCandles(candles.get(), candleSize, stockName);
-                return OBJECT_MAPPER.writeValueAsString(jsonCandles);
-            } else {
-                response.status(404);
+        if (candles.isPresent()) {
+            final var format = CandlesFormat.negotiate(request.headers("Accept"));
+            if (format.isEmpty()) {
+                response.status(406);
                 return "";
             }
-        };
+            final var gzip = acceptsGzip(request.headers("Accept-Encoding"));
+            response.header("Vary", "Accept, Accept-Encoding");
+            response.header(CURSOR_HEADER, cursor(candles.get(), request.queryParams("since")));
+            // pollers which already have the same candles get no body
+            final var etag = etag(CandlesJsonCache.etag(candles.get(), stockName), format.get(), gzip);
+            response.header("ETag", etag);
+            if (matches(request.headers("If-None-Match"), etag)) {
+                response.status(304);
+                return "";
+            }
+            response.type(format.get().mediaType);
+            final var raw = response.raw().getOutputStream();
+            if (gzip) {
+                response.header("Content-Encoding", "gzip");
+            }
+            final var out = gzip ? new GZIPOutputStream(raw, 8192) : raw;
+            if (format.get() == CandlesFormat.JSON) {
+                cache.write(candles.get(), stockName, out);
+            } else {
+                format.get().write(candles.get(), stockName, out);
+            }
+            // the response is committed, so spark does not write a body of its own
+            out.close();
+            return "";
+        } else {
+            response.status(404);
+            return "";
+        }
+    }
+
+    // every representation of the same candles has its own tag
+    private static String etag(String candlesTag, CandlesFormat format, boolean gzip) {
+        if (format == CandlesFormat.JSON && !gzip) {
+            return candlesTag;
+        }
+        return candlesTag.substring(0, candlesTag.length() - 1) + "-" + format.name().toLowerCase() + (gzip ? "-gzip\"" : "\"");
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (var coding : acceptEncoding.split(",")) {
+            final var parameters = coding.split(";");
+            if (parameters[0].trim().equalsIgnoreCase("gzip")) {
+                return parameters.length == 1 || !parameters[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // If-None-Match holds a list of entity tags, weak ones match as well
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var tag : ifNoneMatch.split(",")) {
+            final var trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the latest candle is returned to the next poll again, as it may still change. since is kept if nothing was returned
+    private static String cursor(CandleSeries candles, String since) {
+        if (candles.isEmpty()) {
+            return since == null ? "" : since;
+        }
+        return Long.toString(Math.floorDiv(candles.openTimeMillis(candles.size() - 1), 1000));
+    }
+
+    // candle size is passed as cu=<ChronoUnit name>&l=<amount of units>
+    static CandleSize parseCandleSize(String chronoUnit, String length) {
+        if (chronoUnit == null || length == null) {
+            throw new BadRequestException("cu and l are required");
+        }
+        final ChronoUnit unit;
+        try {
+            unit = ChronoUnit.valueOf(chronoUnit.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(String.format("unknown cu %s", chronoUnit));
+        }
+        final var size = parseInt("l", length);
+        if (size <= 0) {
+            throw new BadRequestException(String.format("l has to be positive, got %s", length));
+        }
+        try {
+            return new CandleSize(size, unit);
+        } catch (RuntimeException e) {
+            throw new BadRequestException(String.format("unsupported candle size %s %s", length, chronoUnit));
+        }
+    }
+
+    static CandleQuery parseQuery(Request request) {
+        return parseQuery(request.queryParams("from"), request.queryParams("to"), request.queryParams("limit"), request.queryParams("since"));
+    }
+
+    // from, to and since are epoch seconds, the same as candle times in the response.
+    // since is the cursor of the previous poll, only candles opened at or after it are returned
+    static CandleQuery parseQuery(String from, String to, String limit, String since) {
+        if (from == null && to == null && limit == null && since == null) {
+            return CandleQuery.ALL;
+        }
+        final var fromMillis = from == null ? Long.MIN_VALUE : SECONDS.toMillis(parseLong("from", from));
+        final var sinceMillis = since == null ? Long.MIN_VALUE : SECONDS.toMillis(parseLong("since", since));
+        final var toMillis = to == null ? Long.MAX_VALUE : SECONDS.toMillis(parseLong("to", to));
+        final var maxCandles = limit == null ? Integer.MAX_VALUE : parseInt("limit", limit);
+        if (maxCandles <= 0) {
+            throw new BadRequestException(String.format("limit has to be positive, got %s", limit));
+        }
+        return new CandleQuery(Math.max(fromMillis, sinceMillis), toMillis, maxCandles);
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(String.format("%s has to be a number, got %s", name, value));
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(String.format("%s has to be a number, got %s", name, value));
+        }
     }
 
 }
@@ -0,0 +1,131 @@
+package candles.resources;
+
+import candles.resources.stream.CandleSubscriptions;
+import candles.resources.stream.Topic;
+import spark.Response;
+import spark.Route;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static spark.Spark.get;
+
+// streams candles of subscribed stocks and candle sizes as server-sent events, see CandleSubscriptions.
+// every client is served by its own request thread, which sends events as soon as they are dispatched.
+// with pooled http threads clients are limited to a share of the pool, so they leave threads to other requests,
+// many clients need virtual http threads (see HttpThreads)
+public class CandleStreamResource implements Resource {
+
+    // sent when there are no events, so disconnected clients are noticed
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(UTF_8);
+    private static final long HEARTBEAT_MILLIS = 15_000;
+
+    private final CandleSubscriptions subscriptions;
+    // 0 if clients are not limited
+    private final int maxClients;
+    private final AtomicInteger clients;
+
+    public CandleStreamResource(CandleSubscriptions subscriptions, int maxClients) {
+        if (maxClients < 0) {
+            throw new RuntimeException(String.format("tried to create stream resource with inappropriate max clients %s", maxClients));
+        }
+        this.subscriptions = subscriptions;
+        this.maxClients = maxClients;
+        this.clients = new AtomicInteger();
+    }
+
+    @Override
+    public void registerRoutes() {
+        get("/stream", stream());
+    }
+
+    private Route stream() {
+        return (request, response) -> {
+            final List<Topic> topics;
+            try {
+                topics = parseTopics(request.queryParamsValues("topic"));
+            } catch (BadRequestException e) {
+                response.status(400);
+                return e.getMessage();
+            }
+            if (!connect()) {
+                response.status(503);
+                response.header("Retry-After", "1");
+                return "too many streaming clients";
+            }
+            try {
+                serve(topics, response);
+            } finally {
+                disconnect();
+            }
+            return "";
+        };
+    }
+
+    private void serve(List<Topic> topics, Response response) throws InterruptedException {
+        response.type("text/event-stream");
+        response.header("Cache-Control", "no-cache");
+        final var subscriber = subscriptions.subscribe(topics);
+        try {
+            final var out = response.raw().getOutputStream();
+            out.write(HEARTBEAT);
+            out.flush();
+            while (!Thread.currentThread().isInterrupted()) {
+                final var events = subscriber.take(HEARTBEAT_MILLIS);
+                if (events == null) {
+                    break;//overflowed, the client resubscribes and catches up through the candles endpoint
+                }
+                if (events.isEmpty()) {
+                    out.write(HEARTBEAT);
+                }
+                for (var event : events) {
+                    out.write(event);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client has disconnected
+        } finally {
+            subscriptions.unsubscribe(subscriber);
+        }
+    }
+
+    // takes a client slot, false if all of them are taken
+    boolean connect() {
+        if (clients.incrementAndGet() > maxClients && maxClients > 0) {
+            clients.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void disconnect() {
+        clients.decrementAndGet();
+    }
+
+    // topics are passed as topic=<stock name>:<size>:<ChronoUnit name>, for example topic=DFE:5:SECONDS
+    static List<Topic> parseTopics(String[] values) {
+        if (values == null || values.length == 0) {
+            throw new BadRequestException("topic is required");
+        }
+        final var topics = new ArrayList<Topic>();
+        for (var value : values) {
+            // stock names may contain colons themselves
+            final var unitStart = value.lastIndexOf(':');
+            final var sizeStart = unitStart <= 0 ? -1 : value.lastIndexOf(':', unitStart - 1);
+            if (sizeStart <= 0) {
+                throw new BadRequestException(String.format("topic has to be <stock>:<size>:<unit>, got %s", value));
+            }
+            try {
+                final var candleSize = CandleResource.parseCandleSize(value.substring(unitStart + 1), value.substring(sizeStart + 1, unitStart));
+                topics.add(new Topic(value.substring(0, sizeStart), candleSize));
+            } catch (BadRequestException e) {
+                throw new BadRequestException(String.format("inappropriate topic %s: %s", value, e.getMessage()));
+            }
+        }
+        return topics;
+    }
+}
@@ -0,0 +1,97 @@
+package candles.resources;
+
+import candles.metrics.Metrics;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+
+// threads running request handlers of the embedded server, chosen before any route is registered.
+// a pool queues requests over its threads up to the queue capacity and rejects the ones over it, so a burst
+// gets connections closed instead of growing the heap. virtual threads run every request on a thread of
+// its own, so long-polling and streaming clients waiting for candles take no platform threads
+public class HttpThreads {
+
+    public enum Model {
+        POOL, VIRTUAL
+    }
+
+    public static ThreadPool pool(int maxThreads, int minThreads, int queue, Duration idleTimeout) {
+        if (minThreads <= 0 || maxThreads < minThreads || queue <= 0) {
+            throw new RuntimeException(format("tried to create inappropriate http pool of %s-%s threads and queue %s", minThreads, maxThreads, queue));
+        }
+        final var pool = new QueuedThreadPool(maxThreads, minThreads, (int) idleTimeout.toMillis(), new ArrayBlockingQueue<>(queue));
+        pool.setName("http");
+        return pool;
+    }
+
+    public static ThreadPool virtual() {
+        return new VirtualThreadPool(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public static void install(ThreadPool threads) {
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(threads));
+    }
+
+    public static void instrument(ThreadPool threads, Metrics metrics) {
+        metrics.gauge("candles_http_threads", "Threads running http requests", "", threads::getThreads);
+        if (threads instanceof QueuedThreadPool) {
+            final var pool = (QueuedThreadPool) threads;
+            metrics.gauge("candles_http_idle_threads", "Pooled http threads waiting for requests", "", pool::getIdleThreads);
+            metrics.gauge("candles_http_queued_requests", "Http requests waiting for a pooled thread", "", pool::getQueueSize);
+        }
+    }
+
+    // a thread per task, threads counts the running ones. virtual threads are never short
+    private static class VirtualThreadPool implements ThreadPool {
+        private final ExecutorService executor;
+        private final AtomicInteger running = new AtomicInteger();
+
+        VirtualThreadPool(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(() -> {
+                running.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // the server runs until the process exits
+            }
+        }
+
+        @Override
+        public int getThreads() {
+            return running.get();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return 0;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package candles.resources;
+
+import candles.metrics.LatencyHistogram;
+import candles.metrics.Metrics;
+import spark.Route;
+
+import static spark.Spark.get;
+
+// exposes metrics in the prometheus text format
+public class MetricsResource implements Resource {
+
+    private final Metrics metrics;
+
+    // request durations in nanoseconds
+    private final LatencyHistogram durations;
+
+    public MetricsResource(Metrics metrics) {
+        this.metrics = metrics;
+        this.durations = metrics.summary("candles_http_request_duration_seconds", "Time spent on serving a request",
+            "route=\"/metrics\"", 1e9);
+    }
+
+    @Override
+    public void registerRoutes() {
+        get("/metrics", getMetrics());
+    }
+
+    private Route getMetrics() {
+        return (request, response) -> {
+            final var start = System.nanoTime();
+            try {
+                response.type("text/plain; version=0.0.4");
+                return metrics.scrape();
+            } finally {
+                durations.record(System.nanoTime() - start);
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package candles.resources.output;
+
+import candles.model.CandleSeries;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+import static candles.resources.output.CandlesJsonWriter.BUFFER_SIZE;
+
+// writes candles as parallel arrays, one per field, so field names are not repeated for every candle.
+// times are epoch seconds as numbers, prices are plain decimal numbers
+public class CandlesColumnsWriter {
+
+    private CandlesColumnsWriter() {
+    }
+
+    public static void write(CandleSeries candles, String stockName, JsonGenerator generator) throws IOException {
+        final var buffer = new char[BUFFER_SIZE];
+
+        generator.writeStartObject();
+        generator.writeStringField("stockName", stockName);
+        generator.writeNumberField("candleSize", candles.candleSize.size);
+        generator.writeStringField("candleChronoUnit", candles.candleSize.unit.name());
+        generator.writeNumberField("closedCandles", candles.closedSize());
+        generator.writeArrayFieldStart("openTime");
+        for (var i = 0; i < candles.size(); i++) {
+            generator.writeNumber(Math.floorDiv(candles.openTimeMillis(i), 1000));
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("closeTime");
+        for (var i = 0; i < candles.size(); i++) {
+            generator.writeNumber(Math.floorDiv(candles.closeTimeMillis(i), 1000));
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("minPrice");
+        for (var i = 0; i < candles.size(); i++) {
+            CandlesJsonWriter.writePrice(generator, candles.minPrice(i), buffer);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("maxPrice");
+        for (var i = 0; i < candles.size(); i++) {
+            CandlesJsonWriter.writePrice(generator, candles.maxPrice(i), buffer);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("openPrice");
+        for (var i = 0; i < candles.size(); i++) {
+            CandlesJsonWriter.writePrice(generator, candles.openPrice(i), buffer);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("closePrice");
+        for (var i = 0; i < candles.size(); i++) {
+            CandlesJsonWriter.writePrice(generator, candles.closePrice(i), buffer);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
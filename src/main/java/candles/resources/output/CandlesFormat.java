@@ -0,0 +1,95 @@
+package candles.resources.output;
+
+import candles.model.CandleSeries;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Optional;
+
+import static candles.Application.OBJECT_MAPPER;
+
+// media types candles are served in, chosen by the Accept header. candles are written either as a list of
+// objects (the same structure as JSON) or as parallel arrays, in JSON or in CBOR
+public enum CandlesFormat {
+    JSON("application/json", OBJECT_MAPPER.getFactory(), false),
+    CBOR("application/cbor", new CBORFactory(), false),
+    COLUMNS_JSON("application/vnd.candles.columns+json", OBJECT_MAPPER.getFactory(), true),
+    COLUMNS_CBOR("application/vnd.candles.columns+cbor", new CBORFactory(), true);
+
+    public final String mediaType;
+    private final JsonFactory factory;
+    private final boolean columns;
+
+    CandlesFormat(String mediaType, JsonFactory factory, boolean columns) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+        this.columns = columns;
+    }
+
+    public void write(CandleSeries candles, String stockName, OutputStream out) throws IOException {
+        try (var generator = factory.createGenerator(out)) {
+            if (columns) {
+                CandlesColumnsWriter.write(candles, stockName, generator);
+            } else {
+                CandlesJsonWriter.write(candles, stockName, generator);
+            }
+        }
+    }
+
+    // the most preferred supported media type of the Accept header, JSON if there is none or any is accepted.
+    // empty if none of the accepted types is supported
+    public static Optional<CandlesFormat> negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return Optional.of(JSON);
+        }
+        final var accepted = new ArrayList<MediaRange>();
+        for (var range : accept.split(",")) {
+            final var parameters = range.split(";");
+            var quality = 1.0;
+            for (var i = 1; i < parameters.length; i++) {
+                final var parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    quality = parseQuality(parameter.substring(2));
+                }
+            }
+            if (quality > 0) {
+                accepted.add(new MediaRange(parameters[0].trim().toLowerCase(), quality));
+            }
+        }
+        // stable, so ranges of the same quality keep the order of the header
+        accepted.sort(Comparator.comparingDouble((MediaRange r) -> r.quality).reversed());
+        for (var range : accepted) {
+            if (range.type.equals("*/*") || range.type.equals("application/*")) {
+                return Optional.of(JSON);
+            }
+            for (var format : values()) {
+                if (format.mediaType.equals(range.type)) {
+                    return Optional.of(format);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static double parseQuality(String quality) {
+        try {
+            return Double.parseDouble(quality);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static class MediaRange {
+        final String type;
+        final double quality;
+
+        MediaRange(String type, double quality) {
+            this.type = type;
+            this.quality = quality;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package candles.resources.output;
+
+import candles.metrics.Metrics;
+import candles.model.CandleSeries;
+import candles.model.CandleSize;
+import candles.model.ScaledPrices;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// serves candles as JSON encoded ahead of time, the output is the same as the one of CandlesJsonWriter.
+// closed candles never change, so closed candles of every stock and candle size are encoded once and extended
+// by the candles closed since the previous request, a request encodes only its not-ready candle.
+// encoded candles are append-only and published through a volatile field, so they are read without locks,
+// extending them is serialized per stock and candle size. stocks are evicted in least recently used order
+// when the cache grows over the byte budget, candles taking more than the whole budget are encoded per request.
+// candles dropped by retention are trimmed once they take half of the encoded ones
+public class CandlesJsonCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+
+    private static final byte[] HEAD = bytes("{\"candles\":[");
+    private static final byte[] OPEN_TIME = bytes(",{\"openTime\":\"");
+    private static final byte[] CLOSE_TIME = bytes("\",\"closeTime\":\"");
+    private static final byte[] MIN_PRICE = bytes("\",\"minPrice\":");
+    private static final byte[] MAX_PRICE = bytes(",\"maxPrice\":");
+    private static final byte[] OPEN_PRICE = bytes(",\"openPrice\":");
+    private static final byte[] CLOSE_PRICE = bytes(",\"closePrice\":");
+    private static final byte[] CANDLE_END = bytes("}");
+    // enough for any long with a sign, a decimal point and a leading zero
+    private static final int BUFFER_SIZE = 48;
+
+    private final long budgetBytes;
+    // access ordered, so the eldest slot is the least recently used one
+    private final LinkedHashMap<Key, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CandlesJsonCache(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new RuntimeException(String.format("tried to create inappropriate candles cache with budget %s", budgetBytes));
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    public void instrument(Metrics metrics) {
+        metrics.counter("candles_response_cache_hits_total", "Requests served from encoded candles only", "", hits::sum);
+        metrics.counter("candles_response_cache_misses_total", "Requests which candles had to be encoded", "", misses::sum);
+        metrics.gauge("candles_response_cache_bytes", "Heap taken by encoded candles", "", this::usedBytes);
+    }
+
+    public void write(CandleSeries candles, String stockName, OutputStream out) throws IOException {
+        final var slot = slot(stockName, candles.candleSize);
+        final var closed = candles.closedSize();
+        final var encoded = closed == 0 ? null : encoded(slot, candles);
+
+        out.write(HEAD);
+        if (encoded != null) {
+            final var from = encoded.indexOf(candles.openTimeMillis(0));
+            final var to = encoded.indexOf(candles.openTimeMillis(closed - 1)) + 1;
+            final var start = encoded.start(from) + 1;//the first candle goes without the separator
+            out.write(encoded.bytes, start, encoded.ends[to - 1] - start);
+        }
+        if (candles.size() > closed) {
+            final var live = new Encoded();
+            live.append(candles, closed, new char[BUFFER_SIZE]);
+            final var skip = closed == 0 ? 1 : 0;
+            out.write(live.bytes, skip, live.ends[0] - skip);
+        }
+        out.write(slot.tail);
+        out.flush();
+    }
+
+    // identifies the response the candles are written to, candles of the same stock and candle size with
+    // the same range of closed candles and the same not-ready candle are written to the same bytes
+    public static String etag(CandleSeries candles, String stockName) {
+        var hash = mix(stockName.hashCode() * 31L + candles.candleSize.hashCode());
+        hash = mix(hash ^ candles.size());
+        if (candles.size() > 0) {
+            hash = mix(hash ^ candles.openTimeMillis(0));
+        }
+        if (candles.closedSize() > 0) {
+            hash = mix(hash ^ candles.openTimeMillis(candles.closedSize() - 1));
+        }
+        if (candles.size() > candles.closedSize()) {
+            final var live = candles.closedSize();
+            hash = mix(hash ^ candles.openTimeMillis(live));
+            hash = mix(hash ^ candles.closeTimeMillis(live));
+            hash = mix(hash ^ candles.minPrice(live));
+            hash = mix(hash ^ candles.maxPrice(live));
+            hash = mix(hash ^ candles.openPrice(live));
+            hash = mix(hash ^ candles.closePrice(live));
+        }
+        return '"' + Long.toHexString(hash) + '"';
+    }
+
+    long usedBytes() {
+        synchronized (slots) {
+            return usedBytes;
+        }
+    }
+
+    private Slot slot(String stockName, CandleSize candleSize) {
+        final var key = new Key(stockName, candleSize);
+        synchronized (slots) {
+            return slots.computeIfAbsent(key, Slot::new);
+        }
+    }
+
+    // encoded candles holding all closed candles of the series
+    private Encoded encoded(Slot slot, CandleSeries candles) {
+        final var first = candles.openTimeMillis(0);
+        final var last = candles.openTimeMillis(candles.closedSize() - 1);
+        final var cached = slot.encoded;
+        if (cached != null && cached.indexOf(first) >= 0 && cached.indexOf(last) >= 0) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        synchronized (slot) {
+            final var current = slot.encoded;
+            final var from = current == null ? -1 : current.indexOf(first);
+            final Encoded updated;
+            if (from < 0) {
+                // candles before the cached ones are requested, expired candles are dropped the same way on eviction
+                updated = new Encoded();
+                updated.append(candles, 0, candles.closedSize());
+            } else if (current.indexOf(last) >= 0) {
+                return current;
+            } else {
+                // candles closed since the cached ones follow them
+                final var cachedLast = current.openTimes[current.count - 1];
+                var next = candles.closedSize();
+                while (next > 0 && candles.openTimeMillis(next - 1) > cachedLast) {
+                    next--;
+                }
+                if (next == 0 || candles.openTimeMillis(next - 1) != cachedLast) {
+                    updated = new Encoded();
+                    updated.append(candles, 0, candles.closedSize());
+                } else {
+                    updated = trim(current, candles).extend(candles, next, candles.closedSize());
+                }
+            }
+            if (updated.heapBytes() > budgetBytes) {
+                // caching them would evict all other candles and be evicted by the next request for another stock
+                slot.encoded = null;
+                resize(slot, 0);
+                return updated;
+            }
+            slot.encoded = updated;
+            resize(slot, updated.heapBytes());
+            return updated;
+        }
+    }
+
+    // encoded candles without the ones the store has dropped since they were encoded
+    private static Encoded trim(Encoded encoded, CandleSeries candles) {
+        final var found = encoded.indexOf(candles.oldestOpenTimeMillis());
+        final var expired = found >= 0 ? found : -found - 1;
+        return expired * 2 > encoded.count ? encoded.drop(expired) : encoded;
+    }
+
+    private void resize(Slot slot, long bytes) {
+        synchronized (slots) {
+            if (slot.evicted) {
+                return;
+            }
+            usedBytes += bytes - slot.bytes;
+            slot.bytes = bytes;
+            final var iterator = slots.values().iterator();
+            while (usedBytes > budgetBytes && iterator.hasNext()) {
+                final var eldest = iterator.next();
+                iterator.remove();
+                eldest.evicted = true;
+                usedBytes -= eldest.bytes;
+            }
+        }
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static byte[] bytes(String ascii) {
+        return ascii.getBytes(US_ASCII);
+    }
+
+    // candles of a stock and candle size, the tail closes the response
+    private static class Slot {
+        final byte[] tail;
+        volatile Encoded encoded;
+        // guarded by the slots map
+        long bytes;
+        boolean evicted;
+
+        Slot(Key key) {
+            final var stockName = new String(JsonStringEncoder.getInstance().quoteAsString(key.stockName));
+            this.tail = ("],\"candleSize\":" + key.candleSize.size + ",\"candleChronoUnit\":\"" + key.candleSize.unit.name()
+                + "\",\"stockName\":\"" + stockName + "\"}").getBytes(UTF_8);
+        }
+    }
+
+    // encoded candles ordered by open time, every one of them starts with the separator.
+    // arrays are only appended to, so older instances sharing them stay valid
+    private static class Encoded {
+        byte[] bytes = new byte[1024];
+        long[] openTimes = new long[8];
+        // end of every candle in bytes
+        int[] ends = new int[8];
+        int count;
+        int size;
+
+        void append(CandleSeries candles, int from, int to) {
+            final var buffer = new char[BUFFER_SIZE];
+            for (var i = from; i < to; i++) {
+                append(candles, i, buffer);
+            }
+        }
+
+        // a copy sharing the arrays if they have room for the candles
+        Encoded extend(CandleSeries candles, int from, int to) {
+            final var extended = new Encoded();
+            extended.bytes = bytes;
+            extended.openTimes = openTimes;
+            extended.ends = ends;
+            extended.count = count;
+            extended.size = size;
+            extended.append(candles, from, to);
+            return extended;
+        }
+
+        // a copy without the first candles
+        Encoded drop(int candles) {
+            final var shift = start(candles);
+            final var dropped = new Encoded();
+            dropped.bytes = Arrays.copyOfRange(bytes, shift, size);
+            dropped.openTimes = Arrays.copyOfRange(openTimes, candles, Math.max(count, candles + 8));
+            dropped.ends = new int[dropped.openTimes.length];
+            for (var i = candles; i < count; i++) {
+                dropped.ends[i - candles] = ends[i] - shift;
+            }
+            dropped.count = count - candles;
+            dropped.size = size - shift;
+            return dropped;
+        }
+
+        void append(CandleSeries candles, int index, char[] buffer) {
+            if (count == ends.length) {
+                openTimes = Arrays.copyOf(openTimes, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            write(OPEN_TIME);
+            write(Math.floorDiv(candles.openTimeMillis(index), 1000), 0, buffer);
+            write(CLOSE_TIME);
+            write(Math.floorDiv(candles.closeTimeMillis(index), 1000), 0, buffer);
+            write(MIN_PRICE);
+            writePrice(candles.minPrice(index), buffer);
+            write(MAX_PRICE);
+            writePrice(candles.maxPrice(index), buffer);
+            write(OPEN_PRICE);
+            writePrice(candles.openPrice(index), buffer);
+            write(CLOSE_PRICE);
+            writePrice(candles.closePrice(index), buffer);
+            write(CANDLE_END);
+            openTimes[count] = candles.openTimeMillis(index);
+            ends[count] = size;
+            count++;
+        }
+
+        int start(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
+
+        // index of the candle opened at the given time, negative if there is none
+        int indexOf(long openTimeMillis) {
+            return Arrays.binarySearch(openTimes, 0, count, openTimeMillis);
+        }
+
+        long heapBytes() {
+            return bytes.length + (long) openTimes.length * Long.BYTES + (long) ends.length * Integer.BYTES;
+        }
+
+        private void writePrice(long scaledPrice, char[] buffer) {
+            write(ScaledPrices.unscaledValue(scaledPrice), ScaledPrices.scale(scaledPrice), buffer);
+        }
+
+        private void write(long unscaled, int scale, char[] buffer) {
+            final var start = CandlesJsonWriter.formatDecimal(unscaled, scale, buffer);
+            ensure(BUFFER_SIZE - start);
+            for (var i = start; i < BUFFER_SIZE; i++) {
+                bytes[size++] = (byte) buffer[i];
+            }
+        }
+
+        private void write(byte[] ascii) {
+            ensure(ascii.length);
+            System.arraycopy(ascii, 0, bytes, size, ascii.length);
+            size += ascii.length;
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+    }
+
+    private static class Key {
+        final String stockName;
+        final CandleSize candleSize;
+
+        Key(String stockName, CandleSize candleSize) {
+            this.stockName = stockName;
+            this.candleSize = candleSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key that = (Key) o;
+            return Objects.equals(stockName, that.stockName) && Objects.equals(candleSize, that.candleSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stockName, candleSize);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package candles.resources.output;
+
+import candles.model.CandleSeries;
+import candles.model.ScaledPrices;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static candles.Application.OBJECT_MAPPER;
+
+// streams candles straight from storage to the output in the same format as JsonCandles,
+// without intermediate JsonCandle objects, boxed times or temporary price strings.
+// binary generators (CBOR) get the same structure with prices as native decimals
+public class CandlesJsonWriter {
+
+    // enough for any long with a sign, a decimal point and a leading zero
+    static final int BUFFER_SIZE = 48;
+
+    private CandlesJsonWriter() {
+    }
+
+    public static void write(CandleSeries candles, String stockName, OutputStream out) throws IOException {
+        try (var generator = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+            write(candles, stockName, generator);
+        }
+    }
+
+    public static void write(CandleSeries candles, String stockName, JsonGenerator generator) throws IOException {
+        final var buffer = new char[BUFFER_SIZE];
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("candles");
+        for (var i = 0; i < candles.size(); i++) {
+            generator.writeStartObject();
+            writeTime(generator, "openTime", candles.openTimeMillis(i), buffer);
+            writeTime(generator, "closeTime", candles.closeTimeMillis(i), buffer);
+            writePrice(generator, "minPrice", candles.minPrice(i), buffer);
+            writePrice(generator, "maxPrice", candles.maxPrice(i), buffer);
+            writePrice(generator, "openPrice", candles.openPrice(i), buffer);
+            writePrice(generator, "closePrice", candles.closePrice(i), buffer);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("candleSize", candles.candleSize.size);
+        generator.writeStringField("candleChronoUnit", candles.candleSize.unit.name());
+        generator.writeStringField("stockName", stockName);
+        generator.writeEndObject();
+    }
+
+    // times are written as quoted epoch seconds, the same way CustomDateTimeSerializer does
+    private static void writeTime(JsonGenerator generator, String name, long epochMillis, char[] buffer) throws IOException {
+        generator.writeFieldName(name);
+        final var start = formatDecimal(Math.floorDiv(epochMillis, 1000), 0, buffer);
+        generator.writeString(buffer, start, BUFFER_SIZE - start);
+    }
+
+    // prices are written as plain decimal numbers, the same way WRITE_BIGDECIMAL_AS_PLAIN does
+    private static void writePrice(JsonGenerator generator, String name, long scaledPrice, char[] buffer) throws IOException {
+        generator.writeFieldName(name);
+        writePrice(generator, scaledPrice, buffer);
+    }
+
+    static void writePrice(JsonGenerator generator, long scaledPrice, char[] buffer) throws IOException {
+        if (generator.canWriteBinaryNatively()) {
+            // binary formats have no raw values
+            generator.writeNumber(ScaledPrices.decode(scaledPrice));
+            return;
+        }
+        final var start = formatDecimal(ScaledPrices.unscaledValue(scaledPrice), ScaledPrices.scale(scaledPrice), buffer);
+        generator.writeRawValue(buffer, start, BUFFER_SIZE - start);
+    }
+
+    // fills the tail of the buffer with the plain representation of unscaled * 10^-scale, returns its start
+    static int formatDecimal(long unscaled, int scale, char[] buffer) {
+        var position = buffer.length;
+        final var negative = unscaled < 0;
+        var digitsWritten = 0;
+        // remainders are negated so that Long.MIN_VALUE can be formatted as well
+        var value = negative ? unscaled : -unscaled;
+        do {
+            if (digitsWritten == scale && scale > 0) {
+                buffer[--position] = '.';
+            }
+            buffer[--position] = (char) ('0' - (value % 10));
+            value /= 10;
+            digitsWritten++;
+        } while (value != 0 || digitsWritten <= scale);
+        if (negative) {
+            buffer[--position] = '-';
+        }
+        return position;
+    }
+}
@@ -22,8 +22,8 @@ public class CustomDateTimeSerializer extends StdSerializer<LocalDateTime> {
     @Override
     public void serialize(LocalDateTime value, JsonGenerator gen, SerializerProvider sp)
         throws IOException {
-        Long epoch = value.atZone(DEFAULT_TIME_ZONE_OFFSET).toInstant().getEpochSecond();
-        gen.writeString(epoch.toString());
+        final var epoch = value.atZone(DEFAULT_TIME_ZONE_OFFSET).toInstant().getEpochSecond();
+        gen.writeString(Long.toString(epoch));
 
     }
 }
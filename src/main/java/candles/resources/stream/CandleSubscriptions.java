@@ -0,0 +1,177 @@
+package candles.resources.stream;
+
+import candles.metrics.Metrics;
+import candles.model.CandleQuery;
+import candles.model.CandleSeries;
+import candles.model.MarketManager;
+import candles.resources.output.CandlesJsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// fans candles of subscribed topics out to subscribers. the dispatcher thread reads candles published by shard
+// writers once per interval, so ingest is not slowed down by subscribers and not-ready candles are conflated
+// to one update per interval. every change is encoded once per topic and shared by all its subscribers.
+// events are server-sent events holding candles in the same format as the candles endpoint:
+// "closed" with candles closed since the previous event and "live" with the not-ready candle
+public class CandleSubscriptions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CandleSubscriptions.class);
+
+    private final MarketManager marketManager;
+    private final long intervalMillis;
+    private final int capacity;
+    private final ConcurrentHashMap<Topic, TopicState> topics = new ConcurrentHashMap<>();
+
+    private final LongAdder subscribers = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    public CandleSubscriptions(MarketManager marketManager, Duration interval, int capacity) {
+        if (interval.isNegative() || interval.isZero() || capacity <= 0) {
+            throw new RuntimeException(format("tried to create inappropriate subscriptions with interval %s and capacity %s", interval, capacity));
+        }
+        this.marketManager = marketManager;
+        this.intervalMillis = interval.toMillis();
+        this.capacity = capacity;
+    }
+
+    public void instrument(Metrics metrics) {
+        metrics.gauge("candles_stream_subscribers", "Clients subscribed to candles", "", subscribers::sum);
+        metrics.gauge("candles_stream_topics", "Stocks and candle sizes having subscribers", "", topics::size);
+        metrics.counter("candles_stream_overflows_total", "Subscribers disconnected for falling behind", "", overflowed::sum);
+    }
+
+    public void start() {
+        final var thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalMillis);
+                    dispatch();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    LOG.error("unable to dispatch candles", e);
+                }
+            }
+        }, "candle-subscriptions");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // the subscriber receives the current not-ready candles and candles closed after subscribing
+    public Subscriber subscribe(List<Topic> subscribed) {
+        final var subscriber = new Subscriber(subscribed, capacity);
+        for (var topic : subscribed) {
+            final var state = topics.compute(topic, (t, current) -> {
+                final var result = current == null ? new TopicState(t) : current;
+                result.subscribers.add(subscriber);
+                return result;
+            });
+            final var live = state.live;
+            if (live != null) {
+                subscriber.live(topic, live);
+            }
+        }
+        subscribers.increment();
+        return subscriber;
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        for (var topic : subscriber.topics) {
+            topics.computeIfPresent(topic, (t, state) -> {
+                state.subscribers.remove(subscriber);
+                return state.subscribers.isEmpty() ? null : state;
+            });
+        }
+        subscribers.decrement();
+    }
+
+    // sends changes of candles since the previous dispatch
+    void dispatch() {
+        for (var state : topics.values()) {
+            final var candles = marketManager.getCandles(state.topic.stockName, state.topic.candleSize);
+            if (candles.isPresent()) {
+                dispatch(state, candles.get());
+            }
+        }
+    }
+
+    private void dispatch(TopicState state, CandleSeries candles) {
+        final var closedSize = candles.closedSize();
+        final var hasLive = candles.size() > closedSize;
+        final var liveOpenTime = hasLive ? candles.openTimeMillis(closedSize) : Long.MAX_VALUE;
+        if (closedSize > 0 && candles.openTimeMillis(closedSize - 1) > state.lastClosed) {
+            final var closed = candles.select(new CandleQuery(state.lastClosed + 1, liveOpenTime, Integer.MAX_VALUE));
+            final var event = event("closed", closed, state.topic);
+            state.lastClosed = candles.openTimeMillis(closedSize - 1);
+            for (var subscriber : state.subscribers) {
+                if (subscriber.closed(state.topic, event)) {
+                    overflowed.increment();
+                }
+            }
+        }
+        if (!hasLive) {
+            state.live = null;
+            state.liveHash = 0;
+            return;
+        }
+        final var liveHash = hash(candles, closedSize);
+        if (state.live == null || liveHash != state.liveHash) {
+            final var event = event("live", candles.select(new CandleQuery(liveOpenTime, Long.MAX_VALUE, 1)), state.topic);
+            state.live = event;
+            state.liveHash = liveHash;
+            for (var subscriber : state.subscribers) {
+                subscriber.live(state.topic, event);
+            }
+        }
+    }
+
+    private static long hash(CandleSeries candles, int index) {
+        var hash = candles.openTimeMillis(index);
+        hash = hash * 31 + candles.closeTimeMillis(index);
+        hash = hash * 31 + candles.minPrice(index);
+        hash = hash * 31 + candles.maxPrice(index);
+        hash = hash * 31 + candles.openPrice(index);
+        return hash * 31 + candles.closePrice(index);
+    }
+
+    private static byte[] event(String name, CandleSeries candles, Topic topic) {
+        final var out = new ByteArrayOutputStream(256);
+        try {
+            out.write(("event: " + name + "\ndata: ").getBytes(UTF_8));
+            CandlesJsonWriter.write(candles, topic.stockName, out);
+            out.write("\n\n".getBytes(UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("unable to encode candles of %s", topic), e);
+        }
+        return out.toByteArray();
+    }
+
+    // state of a topic is changed only by the dispatcher thread
+    private class TopicState {
+        final Topic topic;
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        // open time of the latest closed candle sent
+        long lastClosed;
+        // the latest not-ready candle event, so new subscribers start with it
+        volatile byte[] live;
+        long liveHash;
+
+        TopicState(Topic topic) {
+            this.topic = topic;
+            final var candles = marketManager.getCandles(topic.stockName, topic.candleSize);
+            this.lastClosed = candles.filter(c -> c.closedSize() > 0).map(c -> c.openTimeMillis(c.closedSize() - 1)).orElse(Long.MIN_VALUE);
+        }
+    }
+}
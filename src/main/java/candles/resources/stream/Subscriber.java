@@ -0,0 +1,83 @@
+package candles.resources.stream;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// events waiting to be sent to a single client. closed candles are queued up to the capacity, a subscriber
+// falling behind it is overflowed and has to resubscribe. not-ready candles are conflated, so only the latest
+// one of every topic waits. events are added by the dispatcher and taken by the thread serving the client.
+// the client thread waits on a lock instead of a monitor, so a virtual thread waiting here leaves its carrier
+public class Subscriber {
+
+    public final List<Topic> topics;
+    private final int capacity;
+    private final ArrayDeque<byte[]> closed;
+    private final Map<Topic, byte[]> live;
+    private boolean overflowed;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    Subscriber(List<Topic> topics, int capacity) {
+        this.topics = topics;
+        this.capacity = capacity;
+        this.closed = new ArrayDeque<>();
+        this.live = new LinkedHashMap<>();
+    }
+
+    // returns true if the subscriber is overflowed by the event
+    boolean closed(Topic topic, byte[] event) {
+        lock.lock();
+        try {
+            final var wasOverflowed = overflowed;
+            if (closed.size() == capacity) {
+                overflowed = true;
+            } else {
+                closed.add(event);
+                // the queued candles contain the not-ready one as it was before closing
+                live.remove(topic);
+            }
+            changed.signalAll();
+            return overflowed && !wasOverflowed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void live(Topic topic, byte[] event) {
+        lock.lock();
+        try {
+            live.put(topic, event);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // waits for events up to the timeout (does not wait if it is not positive),
+    // returns no events on timeout and null if the subscriber is overflowed
+    public List<byte[]> take(long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            if (timeoutMillis > 0 && !overflowed && closed.isEmpty() && live.isEmpty()) {
+                changed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            if (overflowed) {
+                return null;
+            }
+            final var events = new ArrayList<byte[]>(closed.size() + live.size());
+            events.addAll(closed);
+            events.addAll(live.values());
+            closed.clear();
+            live.clear();
+            return events;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
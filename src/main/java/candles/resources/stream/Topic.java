@@ -0,0 +1,37 @@
+package candles.resources.stream;
+
+import candles.model.CandleSize;
+
+import java.util.Objects;
+
+// candles of a stock and candle size a client subscribes to
+public class Topic {
+    public final String stockName;
+    public final CandleSize candleSize;
+
+    public Topic(String stockName, CandleSize candleSize) {
+        this.stockName = stockName;
+        this.candleSize = candleSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Topic that = (Topic) o;
+        return Objects.equals(stockName, that.stockName) && Objects.equals(candleSize, that.candleSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stockName, candleSize);
+    }
+
+    @Override
+    public String toString() {
+        return "Topic{" +
+            "stockName='" + stockName + '\'' +
+            ", candleSize=" + candleSize +
+            '}';
+    }
+}
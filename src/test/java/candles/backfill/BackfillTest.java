@@ -0,0 +1,175 @@
+package candles.backfill;
+
+import candles.model.Candle;
+import candles.model.CandleSize;
+import candles.model.MarketSnapshot;
+import candles.model.Retention;
+import candles.model.ScaledPrices;
+import candles.model.Stock;
+import candles.model.Trade;
+import candles.persistence.TradeJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BackfillTest {
+
+    private final CandleSize seconds = new CandleSize(1, SECONDS);
+    private final CandleSize minutes = new CandleSize(1, MINUTES);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+    private final List<String> stocks = List.of("APPL", "MSFT", "AMZN");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_aggregate_recorded_ticks_like_the_service() throws Exception {
+        // given
+        var first = new ArrayList<String>();
+        var second = new ArrayList<String>();
+        for (var i = 0; i < 300; i++) {
+            var frame = String.format("{\"type\":\"trade\",\"data\":[{\"p\":%s,\"s\":\"%s\",\"t\":%s}]}",
+                price(i), stocks.get(i % 3), millis(i));
+            (i < 150 ? first : second).add(frame);
+        }
+        Files.write(directory.resolve("2.ndjson"), second);
+        Files.write(directory.resolve("1.ndjson"), first);
+        var journalDirectory = directory.resolve("journal");
+        var journal = TradeJournal.open(journalDirectory, 1 << 16, 10);
+        for (var i = 300; i < 400; i++) {
+            journal.append(stocks.get(i % 3), millis(i), ScaledPrices.encode(price(i)));
+        }
+        journal.close();
+        var files = new ArrayList<>(List.of(directory.resolve("2.ndjson"), directory.resolve("1.ndjson")));
+        try (var segments = Files.list(journalDirectory)) {
+            segments.forEach(files::add);
+        }
+
+        // when
+        var snapshot = new Backfill(List.of(seconds, minutes), Map.of(), 4).run(files, millis(400), 400);
+
+        // then
+        assertThat(snapshot.sequence).isEqualTo(400L);
+        assertThat(snapshot.stocks).hasSize(3);
+        for (var backfilled : snapshot.stocks) {
+            var expected = new Stock(backfilled.stockName, List.of(seconds, minutes));
+            for (var i = stocks.indexOf(backfilled.stockName); i < 400; i += 3) {
+                expected.addTrade(new Trade(backfilled.stockName, time.plusNanos(i * 70_000_000L), price(i)));
+            }
+            expected.closeCandles(millis(400));
+            assertThat(backfilled.levels).isEqualTo(expected.capture().levels);
+        }
+    }
+
+    @Test
+    void should_reject_unsupported_tick_files() throws Exception {
+        // given
+        var file = Files.writeString(directory.resolve("ticks.csv"), "APPL,1,1");
+        var backfill = new Backfill(List.of(seconds), Map.of(), 1);
+
+        // when then
+        assertThatThrownBy(() -> backfill.run(List.of(file), 0, 0)).hasMessageContaining("tried to backfill from unsupported tick file");
+    }
+
+    @Test
+    void should_keep_stocks_of_the_state_backfilled_into() throws Exception {
+        // given
+        var msft = new Stock("MSFT", List.of(seconds));
+        msft.addTrade(new Trade("MSFT", time.plusSeconds(100), new BigDecimal(3)));
+        var appl = new Stock("APPL", List.of(seconds));
+        appl.addTrade(new Trade("APPL", time.plusSeconds(100), new BigDecimal(1)));
+        var state = new MarketSnapshot(42, List.of(msft.capture(), appl.capture()));
+        var file = directory.resolve("ticks.ndjson");
+        Files.write(file, List.of(
+            "{\"type\":\"trade\",\"data\":[{\"p\":5,\"s\":\"APPL\",\"t\":" + millis(0) + "}]}",
+            "{\"type\":\"trade\",\"data\":[{\"p\":6,\"s\":\"TSLA\",\"t\":" + millis(0) + "}]}",
+            "{\"type\":\"trade\",\"data\":[{\"p\":7,\"s\":\"APPL\",\"t\":" + (time.plusSeconds(100).toInstant(ZoneOffset.UTC).toEpochMilli() + 500) + "}]}"));
+        var backfill = new Backfill(List.of(seconds), Map.of(), 2);
+        var backfilled = backfill.run(List.of(file), millis(2000), 0);
+
+        // when
+        var merged = backfill.merge(state, backfilled);
+
+        // then
+        assertThat(merged.sequence).isEqualTo(42L);
+        assertThat(merged.stocks.stream().map(s -> s.stockName).collect(Collectors.toList())).containsExactly("MSFT", "APPL", "TSLA");
+        assertThat(merged.stocks.get(0).levels).isEqualTo(msft.capture().levels);
+        assertThat(merged.stocks.get(1).levels.get(seconds)).isEqualTo(List.of(
+            new Candle(seconds, time, time, new BigDecimal(5), new BigDecimal(5), new BigDecimal(5), new BigDecimal(5)),
+            new Candle(seconds, time.plusSeconds(100).plusNanos(500_000_000L), time.plusSeconds(100).plusNanos(500_000_000L),
+                new BigDecimal(7), new BigDecimal(7), new BigDecimal(7), new BigDecimal(7))));
+    }
+
+    @Test
+    void should_replace_kept_candles_of_backfilled_buckets() throws Exception {
+        // given
+        var kept = new Stock("APPL", List.of(seconds));
+        for (var second : List.of(0, 1, 2, 5)) {
+            kept.addTrade(new Trade("APPL", time.plusSeconds(second), new BigDecimal(second)));
+        }
+        var state = new MarketSnapshot(42, List.of(kept.capture()));
+        var file = directory.resolve("ticks.ndjson");
+        Files.write(file, List.of(
+            "{\"type\":\"trade\",\"data\":[{\"p\":10,\"s\":\"APPL\",\"t\":" + millis(time.plusSeconds(1)) + "}]}",
+            "{\"type\":\"trade\",\"data\":[{\"p\":30,\"s\":\"APPL\",\"t\":" + millis(time.plusSeconds(3)) + "}]}"));
+        var backfill = new Backfill(List.of(seconds), Map.of(seconds, new Retention(Duration.ZERO, 3)), 1);
+
+        // when
+        var merged = backfill.merge(state, backfill.run(List.of(file), millis(time.plusSeconds(4)), 0));
+
+        // then
+        assertThat(merged.stocks.get(0).levels.get(seconds).stream().map(c -> c.closePrice.intValue()).collect(Collectors.toList()))
+            .containsExactly(10, 2, 30, 5);
+        assertThat(merged.stocks.get(0).levels.get(seconds).closedSize()).isEqualTo(3);
+    }
+
+    @Test
+    void should_aggregate_ticks_of_files_in_time_order() throws Exception {
+        // given
+        var frames = new ArrayList<String>();
+        for (var i = 0; i < 100; i++) {
+            frames.add(String.format("{\"type\":\"trade\",\"data\":[{\"p\":%s,\"s\":\"APPL\",\"t\":%s}]}", price(i), millis(i)));
+        }
+        Files.write(directory.resolve("day-9.ndjson"), frames.subList(0, 50));
+        Files.write(directory.resolve("day-10.ndjson"), frames.subList(50, 100));
+        var expected = new Stock("APPL", List.of(seconds, minutes));
+        for (var i = 0; i < 100; i++) {
+            expected.addTrade(new Trade("APPL", time.plusNanos(i * 70_000_000L), price(i)));
+        }
+        expected.closeCandles(millis(100));
+
+        // when
+        var snapshot = new Backfill(List.of(seconds, minutes), Map.of(), 2)
+            .run(List.of(directory.resolve("day-10.ndjson"), directory.resolve("day-9.ndjson")), millis(100), 0);
+
+        // then
+        assertThat(snapshot.stocks.get(0).levels).isEqualTo(expected.capture().levels);
+    }
+
+    private long millis(int i) {
+        return millis(time.plusNanos(i * 70_000_000L));
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static BigDecimal price(int i) {
+        return new BigDecimal(i).movePointLeft(i % 3);
+    }
+}
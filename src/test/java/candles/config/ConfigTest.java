@@ -0,0 +1,51 @@
+package candles.config;
+
+import candles.resources.HttpThreads;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConfigTest {
+
+    @Test
+    void should_parse_http_threads() {
+        // when
+        var config = ConfigLoader.loadFrom("{\"port\": 8080, \"candles\": [\"1:SECONDS\"], \"httpThreads\": \"virtual\","
+            + " \"httpMaxThreads\": 50, \"httpMinThreads\": 4, \"httpQueue\": 100, \"httpIdleTimeout\": \"PT30S\"}");
+
+        // then
+        assertThat(config.httpThreads).isEqualTo(HttpThreads.Model.VIRTUAL);
+        assertThat(config.httpMaxThreads).isEqualTo(50);
+        assertThat(config.httpMinThreads).isEqualTo(4);
+        assertThat(config.httpQueue).isEqualTo(100);
+        assertThat(config.httpIdleTimeout).isEqualTo(Duration.ofSeconds(30));
+        assertThat(config.streamMaxClients).isEqualTo(0);
+    }
+
+    @Test
+    void should_take_thread_pool_size_for_shards() {
+        // when
+        var config = ConfigLoader.loadFrom("{\"port\": 8080, \"candles\": [\"1:SECONDS\"], \"threadPoolSize\": 3}");
+        var configured = ConfigLoader.loadFrom("{\"port\": 8080, \"candles\": [\"1:SECONDS\"], \"threadPoolSize\": 3, \"shards\": 5}");
+
+        // then
+        assertThat(config.shards).isEqualTo(3);
+        assertThat(configured.shards).isEqualTo(5);
+    }
+
+    @Test
+    void should_default_to_bounded_http_pool() {
+        // when
+        var config = ConfigLoader.loadFrom("{\"port\": 8080, \"candles\": [\"1:SECONDS\"]}");
+
+        // then
+        assertThat(config.httpThreads).isEqualTo(HttpThreads.Model.POOL);
+        assertThat(config.httpMaxThreads).isEqualTo(200);
+        assertThat(config.httpMinThreads).isEqualTo(8);
+        assertThat(config.httpQueue).isEqualTo(1024);
+        assertThat(config.httpIdleTimeout).isEqualTo(Duration.ofMinutes(1));
+        assertThat(config.streamMaxClients).isEqualTo(100);
+    }
+}
@@ -0,0 +1,81 @@
+package candles.integration;
+
+import candles.model.ScaledPrices;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static candles.Application.OBJECT_MAPPER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TickParserTest {
+
+    private final TickParser parser = new TickParser(OBJECT_MAPPER.getFactory());
+
+    @Test
+    void should_emit_trades_from_frame() throws Exception {
+        // given
+        var frame = "{\"data\":[{\"p\":10.120,\"s\":\"AAPL\",\"t\":1670847132123,\"v\":1},{\"s\":\"MSFT\",\"t\":\"1670847132124\",\"p\":\"7\"}],\"type\":\"trade\"}";
+        var trades = new ArrayList<String>();
+
+        // when
+        parser.parse(frame, (stockName, epochMillis, price) -> trades.add(stockName + " " + epochMillis + " " + ScaledPrices.decode(price)));
+
+        // then
+        assertThat(trades).isEqualTo(List.of("AAPL 1670847132123 10.120", "MSFT 1670847132124 7"));
+    }
+
+    @Test
+    void should_resolve_repeated_symbols_to_the_same_name() throws Exception {
+        // given
+        var names = new ArrayList<String>();
+        TradeConsumer consumer = (stockName, epochMillis, price) -> names.add(stockName);
+
+        // when
+        parser.parse("{\"type\":\"trade\",\"data\":[{\"p\":1,\"s\":\"AAPL\",\"t\":1}]}", consumer);
+        parser.parse("{\"type\":\"trade\",\"data\":[{\"p\":1,\"s\":\"AAPL\",\"t\":2}]}", consumer);
+
+        // then
+        assertThat(names.get(0)).isSameAs(names.get(1));
+    }
+
+    @Test
+    void should_reject_incomplete_tick() {
+        assertThatThrownBy(() -> parser.parse("{\"data\":[{\"p\":1,\"t\":1}]}", (stockName, epochMillis, price) -> {}))
+            .hasMessageContaining("tick is expected to have p, s and t fields");
+    }
+
+    @Test
+    void should_allocate_little_per_tick() throws Exception {
+        // given
+        var frame = frame(50);
+        var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+        var consumed = new long[1];
+        TradeConsumer consumer = (stockName, epochMillis, price) -> consumed[0] = price;
+        for (var i = 0; i < 1_000; i++) {
+            parser.parse(frame, consumer);//warm up
+        }
+
+        // when
+        var before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (var i = 0; i < 1_000; i++) {
+            parser.parse(frame, consumer);
+        }
+        var bytesPerTick = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / (1_000 * 50);
+
+        // then - prices are parsed into longs, so nothing is allocated per tick
+        assertThat(bytesPerTick).isLessThan(16L);
+    }
+
+    private static String frame(int ticks) {
+        var frame = new StringBuilder("{\"type\":\"trade\",\"data\":[");
+        for (var i = 0; i < ticks; i++) {
+            frame.append(i == 0 ? "" : ",").append("{\"p\":").append(100 + i).append(".25,\"s\":\"S").append(i % 10).append("\",\"t\":").append(1670847132000L + i).append('}');
+        }
+        return frame.append("]}").toString();
+    }
+}
@@ -0,0 +1,65 @@
+package candles.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+    @Test
+    void should_keep_small_values_exactly() {
+        // given
+        var histogram = new LatencyHistogram();
+
+        // when
+        for (var value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+
+        // then
+        assertThat(histogram.percentile(0.5)).isEqualTo(5L);
+        assertThat(histogram.percentile(1.0)).isEqualTo(10L);
+        assertThat(histogram.count()).isEqualTo(10L);
+        assertThat(histogram.sum()).isEqualTo(55L);
+    }
+
+    @Test
+    void should_calculate_percentiles_with_bounded_relative_error() {
+        // given
+        var histogram = new LatencyHistogram();
+
+        // when
+        for (var value = 1; value <= 1_000_000; value++) {
+            histogram.record(value * 1_000L);
+        }
+
+        // then
+        assertThat(histogram.percentile(0.5)).isBetween(500_000_000L, 500_000_000L + 500_000_000L / 32);
+        assertThat(histogram.percentile(0.99)).isBetween(990_000_000L, 990_000_000L + 990_000_000L / 32);
+        assertThat(histogram.percentile(0.999)).isBetween(999_000_000L, 999_000_000L + 999_000_000L / 32);
+    }
+
+    @Test
+    void should_map_every_value_into_bucket_holding_it() {
+        // given
+        var values = new long[]{0, 31, 32, 33, 63, 64, 1_000, 123_456_789, Long.MAX_VALUE};
+
+        // then
+        for (var value : values) {
+            var bucket = LatencyHistogram.bucket(value);
+            assertThat(LatencyHistogram.highestValue(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.highestValue(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    void should_return_zero_when_nothing_was_recorded() {
+        // given
+        var histogram = new LatencyHistogram();
+
+        // then
+        assertThat(histogram.percentile(0.99)).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,68 @@
+package candles.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetricsTest {
+
+    @Test
+    void should_write_metrics_in_prometheus_text_format() {
+        // given
+        var metrics = new Metrics();
+        var ticks = metrics.counter("ticks_total", "Ticks received");
+        metrics.gauge("depth", "Queue depth", "shard=\"0\"", () -> 3);
+        var durations = metrics.summary("duration_seconds", "Request duration", "route=\"/x\"", 1e3);
+
+        // when
+        ticks.add(5);
+        durations.record(2);
+        durations.record(4);
+
+        // then
+        assertThat(metrics.scrape()).isEqualTo(
+            "# HELP ticks_total Ticks received\n" +
+            "# TYPE ticks_total counter\n" +
+            "ticks_total 5\n" +
+            "# HELP depth Queue depth\n" +
+            "# TYPE depth gauge\n" +
+            "depth{shard=\"0\"} 3\n" +
+            "# HELP duration_seconds Request duration\n" +
+            "# TYPE duration_seconds summary\n" +
+            "duration_seconds{route=\"/x\",quantile=\"0.5\"} 0.002\n" +
+            "duration_seconds{route=\"/x\",quantile=\"0.9\"} 0.004\n" +
+            "duration_seconds{route=\"/x\",quantile=\"0.99\"} 0.004\n" +
+            "duration_seconds{route=\"/x\",quantile=\"0.999\"} 0.004\n" +
+            "duration_seconds_sum{route=\"/x\"} 0.006\n" +
+            "duration_seconds_count{route=\"/x\"} 2\n");
+    }
+
+    @Test
+    void should_group_samples_of_the_same_metric() {
+        // given
+        var metrics = new Metrics();
+
+        // when
+        metrics.gauge("depth", "Queue depth", "shard=\"0\"", () -> 1);
+        metrics.gauge("depth", "Queue depth", "shard=\"1\"", () -> 2);
+
+        // then
+        assertThat(metrics.scrape()).isEqualTo(
+            "# HELP depth Queue depth\n" +
+            "# TYPE depth gauge\n" +
+            "depth{shard=\"0\"} 1\n" +
+            "depth{shard=\"1\"} 2\n");
+    }
+
+    @Test
+    void should_not_register_metric_of_another_type_under_the_same_name() {
+        // given
+        var metrics = new Metrics();
+        metrics.gauge("depth", "Queue depth", "", () -> 1);
+
+        // then
+        assertThatThrownBy(() -> metrics.counter("depth", "Queue depth"))
+            .hasMessageContaining("tried to register counter depth");
+    }
+}
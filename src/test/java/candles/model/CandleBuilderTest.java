@@ -23,15 +23,36 @@ class CandleBuilderTest {
         var nextTrade = new Trade("AAPL", time.plus(1, SECONDS), new BigDecimal(2));
 
         // when
-        var newCandleBuilder = candleBuilder.addTrade(nextTrade);
+        candleBuilder.addTrade(nextTrade);
 
         // then
-        assertThat(newCandleBuilder.openPrice).isEqualTo(new BigDecimal(1));
-        assertThat(newCandleBuilder.closePrice).isEqualTo(new BigDecimal(2));
-        assertThat(newCandleBuilder.maxPrice).isEqualTo(new BigDecimal(2));
-        assertThat(newCandleBuilder.minPrice).isEqualTo(new BigDecimal(1));
-        assertThat(newCandleBuilder.openTime).isEqualTo(time);
-        assertThat(newCandleBuilder.closeTime).isEqualTo(time.plus(1, SECONDS));
+        assertThat(candleBuilder.openPrice).isEqualTo(ScaledPrices.encode(new BigDecimal(1)));
+        assertThat(candleBuilder.closePrice).isEqualTo(ScaledPrices.encode(new BigDecimal(2)));
+        assertThat(candleBuilder.maxPrice).isEqualTo(ScaledPrices.encode(new BigDecimal(2)));
+        assertThat(candleBuilder.minPrice).isEqualTo(ScaledPrices.encode(new BigDecimal(1)));
+        assertThat(candleBuilder.openTimeMillis).isEqualTo(CandleStore.toEpochMillis(time));
+        assertThat(candleBuilder.closeTimeMillis).isEqualTo(CandleStore.toEpochMillis(time.plus(1, SECONDS)));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void should_fold_finer_candles_and_start_over_in_place() {
+        // given
+        var time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+        var candleSize = new CandleSize(1, ChronoUnit.MINUTES);
+        var builder = candle(candleSize, new Trade("APPL", time, new BigDecimal(5)));
+        var finer = candle(new CandleSize(1, SECONDS), new Trade("APPL", time.plusSeconds(1), new BigDecimal(3)));
+        finer.addTrade(new Trade("APPL", time.plusSeconds(1), new BigDecimal(7)));
+
+        // when
+        builder.addCandle(finer);
+        var folded = builder.build();
+        builder.reset(new Trade("APPL", time.plusMinutes(1), new BigDecimal(4)));
+
+        // then
+        assertThat(folded).isEqualTo(new Candle(candleSize, time, time.plusSeconds(1),
+            new BigDecimal(3), new BigDecimal(7), new BigDecimal(5), new BigDecimal(7)));
+        assertThat(builder.build()).isEqualTo(new Candle(candleSize, time.plusMinutes(1), time.plusMinutes(1),
+            new BigDecimal(4), new BigDecimal(4), new BigDecimal(4), new BigDecimal(4)));
+    }
+}
@@ -49,6 +49,23 @@ class CandleSizeTest {
         assertThat(borderTime).isEqualTo(LocalDateTime.of(2022, 12, 12, 12 , 12, 9));
     }
 
+    @Test
+    void should_floor_epoch_millis_to_candle_start() {
+        // given
+        var candleSize = new CandleSize(15, MINUTES);
+        var time = CandleStore.toEpochMillis(LocalDateTime.of(2022, 12, 12, 12, 44, 59, 999_000_000));
+        var beforeEpoch = CandleStore.toEpochMillis(LocalDateTime.of(1969, 12, 31, 23, 59, 1));
+
+        // when
+        var start = candleSize.startMillis(time);
+        var startBeforeEpoch = candleSize.startMillis(beforeEpoch);
+
+        // then
+        assertThat(start).isEqualTo(CandleStore.toEpochMillis(LocalDateTime.of(2022, 12, 12, 12, 30)));
+        assertThat(candleSize.endMillis(start)).isEqualTo(CandleStore.toEpochMillis(LocalDateTime.of(2022, 12, 12, 12, 45)));
+        assertThat(startBeforeEpoch).isEqualTo(CandleStore.toEpochMillis(LocalDateTime.of(1969, 12, 31, 23, 45)));
+    }
+
     @ParameterizedTest
     @MethodSource("timesForFiveSeconds")
     void should_return_correct_time_truncations(LocalDateTime tradeTime, LocalDateTime expectedTime) {
@@ -0,0 +1,217 @@
+package candles.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.LongBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CandleStoreTest {
+
+    private final CandleSize candleSize = new CandleSize(1, SECONDS);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12, 123_000_000);
+
+    @Test
+    void should_restore_stored_candles() {
+        // given
+        var store = new CandleStore(candleSize);
+        var candle = new Candle(candleSize, time, time.plusNanos(500_000_000),
+            new BigDecimal("10.120"), new BigDecimal("12"), new BigDecimal("-1.5"), new BigDecimal("1E+3"));
+
+        // when
+        store.add(candle);
+        var result = store.snapshot(null);
+
+        // then
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).openTime).isEqualTo(candle.openTime);
+        assertThat(result.get(0).closeTime).isEqualTo(candle.closeTime);
+        assertThat(result.get(0).minPrice).isEqualTo(new BigDecimal("10.120"));
+        assertThat(result.get(0).maxPrice).isEqualTo(new BigDecimal("12"));
+        assertThat(result.get(0).openPrice).isEqualTo(new BigDecimal("-1.5"));
+        assertThat(result.get(0).closePrice).isEqualTo(new BigDecimal("1000"));
+    }
+
+    @Test
+    void should_grow_over_several_chunks_and_keep_earlier_snapshots_intact() {
+        // given
+        var store = new CandleStore(candleSize);
+        var candlesAmount = CandleStore.CHUNK_SIZE * 5 + 3;
+        for (var i = 0; i < candlesAmount / 2; i++) {
+            store.add(candle(i));
+        }
+        var earlierSnapshot = store.snapshot(null);
+
+        // when
+        for (var i = candlesAmount / 2; i < candlesAmount; i++) {
+            store.add(candle(i));
+        }
+        var liveCandle = candle(candlesAmount);
+        var result = store.snapshot(liveCandle);
+
+        // then
+        assertThat(earlierSnapshot).hasSize(candlesAmount / 2);
+        assertThat(result).hasSize(candlesAmount + 1);
+        assertThat(result.closedSize()).isEqualTo(candlesAmount);
+        for (var i = 0; i < candlesAmount; i++) {
+            assertThat(result.get(i)).isEqualTo(candle(i));
+        }
+        assertThat(result.get(candlesAmount)).isEqualTo(liveCandle);
+    }
+
+    @Test
+    void should_drop_oldest_candles_above_max_count() {
+        // given
+        var store = new CandleStore(candleSize, new Retention(Duration.ZERO, 1500));
+
+        // when
+        for (var i = 0; i < 5000; i++) {
+            store.add(candle(i));
+        }
+        var result = store.snapshot(null);
+
+        // then
+        assertThat(result).hasSize(1500);
+        assertThat(result.get(0)).isEqualTo(candle(3500));
+        assertThat(result.get(1499)).isEqualTo(candle(4999));
+    }
+
+    @Test
+    void should_drop_candles_older_than_max_age() {
+        // given
+        var store = new CandleStore(candleSize, new Retention(Duration.ofMinutes(1), 0));
+        var earlierSnapshot = store.snapshot(null);
+        for (var i = 0; i < 3000; i++) {
+            store.add(candle(i));
+            if (i == 100) {
+                earlierSnapshot = store.snapshot(null);
+            }
+        }
+
+        // when
+        var result = store.snapshot(null);
+
+        // then
+        assertThat(result).hasSize(61);
+        assertThat(result.get(0)).isEqualTo(candle(2939));
+        assertThat(earlierSnapshot).hasSize(61);
+        assertThat(earlierSnapshot.get(0)).isEqualTo(candle(40));
+    }
+
+    @Test
+    void should_select_candles_by_open_time_range_and_limit() {
+        // given
+        var store = new CandleStore(candleSize);
+        for (var i = 0; i < 3000; i++) {
+            store.add(candle(i));
+        }
+        var liveCandle = candle(3000);
+        var from = CandleStore.toEpochMillis(time.plusSeconds(1000));
+        var to = CandleStore.toEpochMillis(time.plusSeconds(2500));
+
+        // when
+        var range = store.snapshot(liveCandle, new CandleQuery(from, to, Integer.MAX_VALUE));
+        var limitedRange = store.snapshot(liveCandle, new CandleQuery(from, to, 10));
+        var latest = store.snapshot(liveCandle, new CandleQuery(Long.MIN_VALUE, Long.MAX_VALUE, 3));
+        var empty = store.snapshot(liveCandle, new CandleQuery(to, from, 3));
+
+        // then
+        assertThat(range).hasSize(1500);
+        assertThat(range.get(0)).isEqualTo(candle(1000));
+        assertThat(range.get(1499)).isEqualTo(candle(2499));
+        assertThat(limitedRange).isEqualTo(List.of(candle(2490), candle(2491), candle(2492), candle(2493), candle(2494),
+            candle(2495), candle(2496), candle(2497), candle(2498), candle(2499)));
+        assertThat(latest).isEqualTo(List.of(candle(2998), candle(2999), liveCandle));
+        assertThat(empty).isEmpty();
+    }
+
+    @Test
+    void should_seal_old_chunks_into_tier_and_merge_them_with_heap_candles() {
+        // given
+        var tier = new InMemoryTier(Duration.ofMinutes(10));
+        var store = new CandleStore(candleSize, new Retention(Duration.ZERO, 4000), "APPL", tier);
+
+        // when
+        for (var i = 0; i < 5000; i++) {
+            store.add(candle(i));
+        }
+        var result = store.snapshot(null);
+        var range = store.snapshot(null, new CandleQuery(CandleStore.toEpochMillis(time.plusSeconds(1990)), CandleStore.toEpochMillis(time.plusSeconds(2010)), 5));
+
+        // then
+        assertThat(tier.sealed).isEqualTo(4);
+        assertThat(tier.released).isEqualTo(0);
+        assertThat(result).hasSize(4000);
+        for (var i = 0; i < 4000; i++) {
+            assertThat(result.get(i)).isEqualTo(candle(1000 + i));
+        }
+        assertThat(range).isEqualTo(List.of(candle(2005), candle(2006), candle(2007), candle(2008), candle(2009)));
+    }
+
+    @Test
+    void should_release_sealed_candles_dropped_by_retention() {
+        // given
+        var tier = new InMemoryTier(Duration.ofMinutes(1));
+        var store = new CandleStore(candleSize, new Retention(Duration.ofHours(1), 0), "APPL", tier);
+
+        // when
+        for (var i = 0; i < 10_000; i++) {
+            store.add(candle(i));
+        }
+        var result = store.snapshot(null);
+
+        // then
+        assertThat(tier.sealed).isEqualTo(9);
+        assertThat(tier.released).isEqualTo(6);
+        assertThat(result).hasSize(3601);
+        assertThat(result.get(0)).isEqualTo(candle(6399));
+    }
+
+    @Test
+    void should_reject_prices_not_fitting_into_scaled_long() {
+        assertThatThrownBy(() -> ScaledPrices.encode(new BigDecimal("123456789012345678901234567890")))
+            .hasMessage("price 123456789012345678901234567890 does not fit into scaled long");
+    }
+
+    private Candle candle(int i) {
+        var price = BigDecimal.valueOf(i, 2);
+        return new Candle(candleSize, time.plusSeconds(i), time.plusSeconds(i), price, price, price, price);
+    }
+
+    private static class InMemoryTier implements CandleTier {
+        final long sealAfterMillis;
+        int sealed;
+        int released;
+
+        InMemoryTier(Duration sealAfter) {
+            this.sealAfterMillis = sealAfter.toMillis();
+        }
+
+        @Override
+        public long sealAfterMillis() {
+            return sealAfterMillis;
+        }
+
+        @Override
+        public CompletableFuture<SealedCandles> seal(String stockName, CandleSize candleSize, long[] chunk, int from, int count) {
+            var columns = LongBuffer.allocate(CandleStore.COLUMNS * count);
+            for (var column = 0; column < CandleStore.COLUMNS; column++) {
+                columns.put(chunk, column * CandleStore.CHUNK_SIZE + from, count);
+            }
+            sealed++;
+            return CompletableFuture.completedFuture(new SealedCandles(stockName + sealed, count, columns.flip()));
+        }
+
+        @Override
+        public void release(SealedCandles candles) {
+            released++;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package candles.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DerivedCandlesTest {
+
+    private final CandleSize fiveSeconds = new CandleSize(5, SECONDS);
+    private final CandleSize tenSeconds = new CandleSize(10, SECONDS);
+    private final CandleSize thirtySeconds = new CandleSize(30, SECONDS);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 10);
+
+    @Test
+    void should_roll_up_the_same_candles_as_aggregated_ones() {
+        // given
+        var stock = new Stock("APPL", List.of(fiveSeconds, thirtySeconds));
+        var derived = new DerivedCandles(List.of(fiveSeconds), Map.of(), 16);
+
+        // then
+        for (var second = 0; second < 200; second += 3) {
+            stock.addTrade(new Trade("APPL", time.plusSeconds(second), new BigDecimal(second % 17)));
+            stock.publish();
+            var candles = derived.getCandles(stock, thirtySeconds, CandleQuery.ALL).get();
+            assertThat(candles).isEqualTo(stock.getCandles(thirtySeconds));
+        }
+    }
+
+    @Test
+    void should_roll_up_from_the_coarsest_fitting_size() {
+        // given
+        var derived = new DerivedCandles(List.of(new CandleSize(1, SECONDS), fiveSeconds, tenSeconds, new CandleSize(1, MINUTES)), Map.of(), 16);
+
+        // then
+        assertThat(derived.sourceOf(thirtySeconds)).isEqualTo(tenSeconds);
+        assertThat(derived.sourceOf(new CandleSize(2, MINUTES))).isEqualTo(new CandleSize(1, MINUTES));
+        assertThat(derived.sourceOf(new CandleSize(1, SECONDS))).isNull();
+    }
+
+    @Test
+    void should_select_rolled_up_candles() {
+        // given
+        var stock = new Stock("APPL", List.of(fiveSeconds));
+        var derived = new DerivedCandles(List.of(fiveSeconds), Map.of(), 16);
+        for (var second = 0; second < 100; second++) {
+            stock.addTrade(new Trade("APPL", time.plusSeconds(second), new BigDecimal(second)));
+        }
+        stock.publish();
+
+        // when
+        var candles = derived.getCandles(stock, tenSeconds, new CandleQuery(Long.MIN_VALUE, Long.MAX_VALUE, 2)).get();
+
+        // then
+        assertThat(candles).isEqualTo(List.of(
+            new Candle(tenSeconds, time.plusSeconds(80), time.plusSeconds(89), new BigDecimal(80), new BigDecimal(89), new BigDecimal(80), new BigDecimal(89)),
+            new Candle(tenSeconds, time.plusSeconds(90), time.plusSeconds(99), new BigDecimal(90), new BigDecimal(99), new BigDecimal(90), new BigDecimal(99))));
+    }
+
+    @Test
+    void should_evict_least_recently_requested_candles_over_capacity() {
+        // given
+        var derived = new DerivedCandles(List.of(fiveSeconds), Map.of(), 2);
+
+        // when
+        for (var name : List.of("A", "B", "C")) {
+            var stock = new Stock(name, List.of(fiveSeconds));
+            stock.addTrade(new Trade(name, time, new BigDecimal(1)));
+            stock.publish();
+            derived.getCandles(stock, tenSeconds, CandleQuery.ALL);
+        }
+
+        // then
+        assertThat(derived.size()).isEqualTo(2);
+    }
+}
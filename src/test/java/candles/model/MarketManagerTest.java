@@ -0,0 +1,273 @@
+package candles.model;
+
+import candles.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MarketManagerTest {
+
+    private final CandleSize candleSize = new CandleSize(1, SECONDS);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+
+    @Test
+    void should_aggregate_stocks_on_shards() {
+        // given
+        var market = new MarketManager(List.of(candleSize), 3);
+        market.start();
+        var stocks = List.of("APPL", "MSFT", "AMZN", "GOOG", "TSLA");
+
+        // when
+        for (var i = 0; i < 1000; i++) {
+            for (var stock : stocks) {
+                market.processMarketEvent(new Trade(stock, time.plusNanos(i * 10_000_000L), new BigDecimal(i)));
+            }
+        }
+
+        // then
+        for (var stock : stocks) {
+            var candles = await(() -> market.getCandles(stock, candleSize).filter(c -> c.size() == 10 && c.get(9).closePrice.intValue() == 999));
+            assertThat(candles.get(0)).isEqualTo(new Candle(candleSize, time, time.plusNanos(990_000_000L),
+                new BigDecimal(0), new BigDecimal(99), new BigDecimal(0), new BigDecimal(99)));
+        }
+    }
+
+    @Test
+    void should_not_return_candles_of_unknown_stock_or_size() {
+        // given
+        var fiveSeconds = new CandleSize(5, SECONDS);
+        var market = new MarketManager(List.of(fiveSeconds), 1);
+        market.start();
+        market.processMarketEvent(new Trade("APPL", time, new BigDecimal(1)));
+        await(() -> market.getCandles("APPL", fiveSeconds).filter(c -> !c.isEmpty()));
+
+        // when
+        var unknownStock = market.getCandles("MSFT", fiveSeconds);
+        var unknownSize = market.getCandles("APPL", candleSize);
+
+        // then
+        assertThat(unknownStock.isPresent()).isFalse();
+        assertThat(unknownSize.isPresent()).isFalse();
+    }
+
+    @Test
+    void should_roll_up_candles_of_sizes_not_aggregated() {
+        // given
+        var twoSeconds = new CandleSize(2, SECONDS);
+        var market = new MarketManager(List.of(candleSize), 1);
+        market.start();
+        for (var i = 0; i < 4; i++) {
+            market.processMarketEvent(new Trade("APPL", time.plusSeconds(i), new BigDecimal(i)));
+        }
+        await(() -> market.getCandles("APPL", candleSize).filter(c -> c.size() == 4));
+
+        // when
+        var candles = market.getCandles("APPL", twoSeconds);
+
+        // then
+        assertThat(candles.get()).isEqualTo(List.of(
+            new Candle(twoSeconds, time, time.plusSeconds(1), new BigDecimal(0), new BigDecimal(1), new BigDecimal(0), new BigDecimal(1)),
+            new Candle(twoSeconds, time.plusSeconds(2), time.plusSeconds(3), new BigDecimal(2), new BigDecimal(3), new BigDecimal(2), new BigDecimal(3))));
+    }
+
+    @Test
+    void should_expose_market_state_in_metrics() {
+        // given
+        var metrics = new Metrics();
+        var market = new MarketManager(List.of(candleSize), 2);
+        market.instrument(metrics);
+        market.start();
+
+        // when
+        market.processMarketEvent(new Trade("APPL", time, new BigDecimal(1)));
+        market.processMarketEvent(new Trade("MSFT", time, new BigDecimal(1)));
+        await(() -> market.getCandles("APPL", candleSize).filter(c -> !c.isEmpty()));
+        await(() -> market.getCandles("MSFT", candleSize).filter(c -> !c.isEmpty()));
+
+        // then
+        assertThat(metrics.scrape()).contains("candles_active_symbols 2\n", "candles_shard_queue_depth{shard=\"1\"} 0\n");
+    }
+
+    @Test
+    void should_drop_trades_offered_to_full_ring() {
+        // given
+        var metrics = new Metrics();
+        var market = new MarketManager(List.of(candleSize), Map.of(), null, 1, 2);
+        market.instrument(metrics);
+        market.ingestPolicy(IngestPolicy.DROP);
+
+        // when
+        var accepted = new ArrayList<Boolean>();
+        for (var i = 1; i <= 5; i++) {
+            accepted.add(market.processMarketEvent(new Trade("APPL", time.plusNanos(i * 100_000_000L), new BigDecimal(i))));
+        }
+        market.start();
+
+        // then
+        var candles = await(() -> market.getCandles("APPL", candleSize).filter(c -> !c.isEmpty() && c.get(0).closePrice.intValue() == 2));
+        assertThat(candles.get(0)).isEqualTo(new Candle(candleSize, time.plusNanos(100_000_000L), time.plusNanos(200_000_000L),
+            new BigDecimal(1), new BigDecimal(2), new BigDecimal(1), new BigDecimal(2)));
+        assertThat(accepted).isEqualTo(List.of(true, true, false, false, false));
+        assertThat(metrics.scrape()).contains("candles_shard_trades_dropped_total{shard=\"0\"} 3\n");
+    }
+
+    @Test
+    void should_conflate_trades_offered_to_full_ring_into_the_same_candles() {
+        // given
+        var metrics = new Metrics();
+        var market = new MarketManager(List.of(candleSize), Map.of(), null, 1, 2);
+        market.instrument(metrics);
+        market.ingestPolicy(IngestPolicy.CONFLATE);
+        var prices = List.of(1, 5, 0, 3, 2);
+
+        // when
+        for (var i = 0; i < prices.size(); i++) {
+            market.processMarketEvent(new Trade("APPL", time.plusNanos(i * 100_000_000L), new BigDecimal(prices.get(i))));
+        }
+        market.start();
+
+        // then
+        var candles = await(() -> market.getCandles("APPL", candleSize).filter(c -> !c.isEmpty() && c.get(0).closePrice.intValue() == 2));
+        assertThat(candles.get(0)).isEqualTo(new Candle(candleSize, time, time.plusNanos(400_000_000L),
+            new BigDecimal(0), new BigDecimal(5), new BigDecimal(1), new BigDecimal(2)));
+        assertThat(metrics.scrape()).contains("candles_shard_trades_conflated_total{shard=\"0\"} 2\n");
+    }
+
+    @Test
+    void should_conflate_more_stocks_than_ring_holds_while_writer_runs() throws InterruptedException {
+        // given
+        var market = new MarketManager(List.of(candleSize), Map.of(), null, 1, 2);
+        market.ingestPolicy(IngestPolicy.CONFLATE);
+        market.start();
+        // candles of the future are not closed while trades come
+        var start = LocalDateTime.now(ZoneOffset.UTC).plusHours(1).truncatedTo(SECONDS);
+        var producer = new Thread(() -> {
+            for (var i = 0; i < 30; i++) {
+                for (var stock = 0; stock < 50; stock++) {
+                    market.processMarketEvent(new Trade("S" + stock, start.plusNanos(i * 100_000_000L), new BigDecimal(i)));
+                }
+            }
+        });
+
+        // when
+        producer.start();
+        producer.join(5_000);
+
+        // then
+        assertThat(producer.isAlive()).isFalse();
+        for (var stock = 0; stock < 50; stock++) {
+            var stockName = "S" + stock;
+            var candles = await(() -> market.getCandles(stockName, candleSize).filter(c -> c.size() == 3 && c.get(2).closePrice.intValue() == 29));
+            assertThat(candles.get(0)).isEqualTo(new Candle(candleSize, start, start.plusNanos(900_000_000L),
+                new BigDecimal(0), new BigDecimal(9), new BigDecimal(0), new BigDecimal(9)));
+        }
+        market.stop();
+    }
+
+    @Test
+    void should_close_candles_by_trade_time() throws InterruptedException {
+        // given
+        var metrics = new Metrics();
+        var market = new MarketManager(List.of(candleSize), 1);
+        market.instrument(metrics);
+        market.start();
+        market.processMarketEvent(new Trade("APPL", time, new BigDecimal(1)));
+        await(() -> market.getCandles("APPL", candleSize).filter(c -> !c.isEmpty()));
+
+        // when
+        Thread.sleep(300);
+        market.processMarketEvent(new Trade("APPL", time.plusNanos(500_000_000L), new BigDecimal(2)));
+
+        // then
+        var candles = await(() -> market.getCandles("APPL", candleSize).filter(c -> !c.isEmpty() && c.get(0).closePrice.intValue() == 2));
+        assertThat(candles.closedSize()).isEqualTo(0);
+        assertThat(candles.get(0)).isEqualTo(new Candle(candleSize, time, time.plusNanos(500_000_000L),
+            new BigDecimal(1), new BigDecimal(2), new BigDecimal(1), new BigDecimal(2)));
+        assertThat(metrics.scrape()).contains("candles_shard_trades_late_total{shard=\"0\"} 0\n");
+        market.stop();
+    }
+
+    @Test
+    void should_drop_trades_of_candles_closed_by_later_trades() {
+        // given
+        var metrics = new Metrics();
+        var market = new MarketManager(List.of(candleSize), 1);
+        market.closeCandles(Duration.ofSeconds(1), LatePolicy.DROP);
+        market.instrument(metrics);
+        market.start();
+        market.processMarketEvent(new Trade("APPL", time, new BigDecimal(1)));
+        market.processMarketEvent(new Trade("MSFT", time.plusSeconds(2), new BigDecimal(1)));
+        await(() -> market.getCandles("APPL", candleSize).filter(c -> c.closedSize() == 1));
+
+        // when
+        market.processMarketEvent(new Trade("APPL", time.plusNanos(500_000_000L), new BigDecimal(2)));
+        market.processMarketEvent(new Trade("MSFT", time.plusSeconds(3), new BigDecimal(1)));
+
+        // then
+        await(() -> market.getCandles("MSFT", candleSize).filter(c -> c.size() == 2));
+        assertThat(market.getCandles("APPL", candleSize).orElseThrow()).isEqualTo(List.of(
+            new Candle(candleSize, time, time, new BigDecimal(1), new BigDecimal(1), new BigDecimal(1), new BigDecimal(1))));
+        assertThat(metrics.scrape()).contains("candles_shard_trades_late_total{shard=\"0\"} 1\n");
+        market.stop();
+    }
+
+    @Test
+    void should_skip_trades_which_aggregation_fails() {
+        // given
+        var metrics = new Metrics();
+        var tier = new CandleTier() {
+            @Override
+            public long sealAfterMillis() {
+                return 0;
+            }
+
+            @Override
+            public CompletableFuture<SealedCandles> seal(String stockName, CandleSize candleSize, long[] chunk, int from, int count) {
+                return CompletableFuture.failedFuture(new RuntimeException("unable to write candles of " + stockName));
+            }
+
+            @Override
+            public void release(SealedCandles candles) {
+            }
+        };
+        var market = new MarketManager(List.of(candleSize), Map.of(), tier, 1);
+        market.instrument(metrics);
+        market.start();
+
+        // when
+        for (var i = 0; i < 2 * CandleStore.CHUNK_SIZE; i++) {
+            market.processMarketEvent(new Trade("APPL", time.plusSeconds(i), new BigDecimal(1)));
+        }
+        market.processMarketEvent(new Trade("MSFT", time, new BigDecimal(1)));
+
+        // then
+        await(() -> market.getCandles("MSFT", candleSize).filter(c -> !c.isEmpty()));
+        assertThat(metrics.scrape()).contains("candles_shard_trades_failed_total{shard=\"0\"} ")
+            .doesNotContain("candles_shard_trades_failed_total{shard=\"0\"} 0\n");
+    }
+
+    // candles are published by shard writers asynchronously
+    private static CandleSeries await(Supplier<Optional<CandleSeries>> candles) {
+        final var deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            final var result = candles.get();
+            if (result.isPresent()) {
+                return result.get();
+            }
+            Thread.onSpinWait();
+        }
+        throw new AssertionError("candles were not published in time");
+    }
+}
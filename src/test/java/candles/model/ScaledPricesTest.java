@@ -0,0 +1,66 @@
+package candles.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScaledPricesTest {
+
+    @Test
+    void should_parse_prices_the_same_way_as_big_decimal() {
+        for (var price : List.of("7296.89", "10.120", "-1.5", "0", "0.00000001", "1E+3", "1.5e-3", "-2.50E2", "12345678901234567")) {
+            // when
+            var parsed = ScaledPrices.parse(price.toCharArray(), 0, price.length());
+
+            // then
+            assertThat(parsed).isEqualTo(ScaledPrices.encode(new BigDecimal(price)));
+            assertThat(ScaledPrices.decode(parsed).toPlainString()).isEqualTo(new BigDecimal(price).toPlainString());
+        }
+    }
+
+    @Test
+    void should_reject_prices_not_fitting_into_long() {
+        assertThatThrownBy(() -> parse("288230376151711744")).hasMessage("price 288230376151711744 does not fit into scaled long");
+        assertThatThrownBy(() -> parse("1.00000000000000000000000000000001")).hasMessageContaining("does not fit into scaled long");
+        assertThatThrownBy(() -> parse("1E+20")).hasMessageContaining("does not fit into scaled long");
+        assertThatThrownBy(() -> parse("1.2.3")).hasMessage("price 1.2.3 is not a number");
+    }
+
+    @Test
+    void should_compare_prices_of_different_scales() {
+        // given
+        var one = ScaledPrices.encode(new BigDecimal("1"));
+        var oneAndHalf = ScaledPrices.encode(new BigDecimal("1.50"));
+        var sameOne = ScaledPrices.encode(new BigDecimal("1.000"));
+        var huge = ScaledPrices.encode(new BigDecimal("100000000000000000"));
+        var tiny = ScaledPrices.encode(new BigDecimal("0.0000000000000000000000001"));
+
+        // then
+        assertThat(ScaledPrices.compare(one, oneAndHalf)).isLessThan(0);
+        assertThat(ScaledPrices.compare(oneAndHalf, one)).isGreaterThan(0);
+        assertThat(ScaledPrices.compare(one, sameOne)).isEqualTo(0);
+        assertThat(ScaledPrices.compare(huge, tiny)).isGreaterThan(0);
+        assertThat(ScaledPrices.min(one, sameOne)).isEqualTo(one);
+        assertThat(ScaledPrices.max(sameOne, one)).isEqualTo(sameOne);
+    }
+
+    @Test
+    void should_accept_prices_fitting_stock_scale() {
+        // given
+        var scales = new PriceScales(2, Map.of("BTC", 8));
+        var price = ScaledPrices.encode(new BigDecimal("1.123"));
+
+        // then
+        assertThat(scales.accepts("APPL", price)).isFalse();
+        assertThat(scales.accepts("BTC", price)).isTrue();
+    }
+
+    private static long parse(String price) {
+        return ScaledPrices.parse(price.toCharArray(), 0, price.length());
+    }
+}
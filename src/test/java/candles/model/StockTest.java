@@ -5,16 +5,13 @@ import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
 
+import static java.time.temporal.ChronoUnit.MILLIS;
 import static java.time.temporal.ChronoUnit.MINUTES;
 import static java.time.temporal.ChronoUnit.SECONDS;
-import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.assertj.core.api.Assertions.assertThat;
 
 class StockTest {
-    private final ScheduledExecutorService scheduler = newScheduledThreadPool(1);
-
     private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
     BigDecimal price1 = new BigDecimal(1);
     BigDecimal price2 = new BigDecimal(2);
@@ -26,7 +23,7 @@ class StockTest {
     void should_return_zero_candles_with_zero_trades() {
         // given
         var candleSize = new CandleSize(1, SECONDS);
-        var stock = new Stock("APPL", List.of(candleSize), scheduler);
+        var stock = new Stock("APPL", List.of(candleSize));
 
         // when
         var result = stock.getCandles(candleSize);
@@ -39,9 +36,10 @@ class StockTest {
     void should_return_return_single_unfinished_candle() {
         // given
         var candleSize = new CandleSize(10, SECONDS);
-        var stock = new Stock("APPL", List.of(candleSize), scheduler);
+        var stock = new Stock("APPL", List.of(candleSize));
         stock.addTrade(new Trade("APPL", time, price1));
         stock.addTrade(new Trade("APPL", time.plus(1, SECONDS), price2));
+        stock.publish();
 
         // when
         var result = stock.getCandles(candleSize);
@@ -54,11 +52,12 @@ class StockTest {
     void should_return_return_finished_and_unfinished_candle() {
         // given
         var candleSize = new CandleSize(1, SECONDS);
-        var timeFinished = LocalDateTime.now().minus(5, SECONDS);
-        var timeNotFinished = LocalDateTime.now();
-        var stock = new Stock("APPL", List.of(candleSize), scheduler);
+        var timeFinished = LocalDateTime.now().truncatedTo(MILLIS).minus(5, SECONDS);
+        var timeNotFinished = LocalDateTime.now().truncatedTo(MILLIS);
+        var stock = new Stock("APPL", List.of(candleSize));
         stock.addTrade(new Trade("APPL", timeFinished, price1));
         stock.addTrade(new Trade("APPL", timeNotFinished, price2));
+        stock.publish();
 
         // when
         var result = stock.getCandles(candleSize);
@@ -78,10 +77,11 @@ class StockTest {
         var timeFinished2 = time.minus(3, SECONDS);
         var timeNotFinished = time;
         var price = new BigDecimal(1);
-        var stock = new Stock("APPL", List.of(candleSize), scheduler);
+        var stock = new Stock("APPL", List.of(candleSize));
         stock.addTrade(new Trade("APPL", timeFinished1, new BigDecimal(1)));
         stock.addTrade(new Trade("APPL", timeFinished2, new BigDecimal(1)));
         stock.addTrade(new Trade("APPL", timeNotFinished, new BigDecimal(1)));
+        stock.publish();
 
         // when
         var result = stock.getCandles(candleSize);
@@ -101,10 +101,11 @@ class StockTest {
         var timeFinished1 = time.minus(8, MINUTES);
         var timeFinished2 = time.minus(3, MINUTES);
         var timeNotFinished = time;
-        var stock = new Stock("APPL", List.of(candleSize), scheduler);
+        var stock = new Stock("APPL", List.of(candleSize));
         stock.addTrade(new Trade("APPL", timeFinished1, price1));
         stock.addTrade(new Trade("APPL", timeFinished2, price1));
         stock.addTrade(new Trade("APPL", timeNotFinished, price1));
+        stock.publish();
 
         // when
         var result = stock.getCandles(candleSize);
@@ -126,12 +127,13 @@ class StockTest {
         var timeFinished3 = time.minus(2, MINUTES);
         var timeFinished4 = time.minus(1, MINUTES);
         var timeNotFinished = time;
-        var stock = new Stock("APPL", List.of(candleSize), scheduler);
+        var stock = new Stock("APPL", List.of(candleSize));
         stock.addTrade(new Trade("APPL", timeFinished1, price1));
         stock.addTrade(new Trade("APPL", timeFinished2, price2));
         stock.addTrade(new Trade("APPL", timeFinished3, price3));
         stock.addTrade(new Trade("APPL", timeFinished4, price1));
         stock.addTrade(new Trade("APPL", timeNotFinished, price2));
+        stock.publish();
 
         // when
         var result = stock.getCandles(candleSize);
@@ -142,4 +144,129 @@ class StockTest {
             new Candle(candleSize, timeNotFinished, timeNotFinished, price2, price2, price2, price2)
         ));
     }
-}
\ No newline at end of file
+
+    @Test
+    void should_roll_up_coarse_candles_from_finer_ones() {
+        // given
+        var seconds = new CandleSize(1, SECONDS);
+        var fiveSeconds = new CandleSize(5, SECONDS);
+        var fifteenSeconds = new CandleSize(15, SECONDS);
+        var minutes = new CandleSize(1, MINUTES);
+        var stock = new Stock("APPL", List.of(minutes, fifteenSeconds, seconds, fiveSeconds));
+        var singleMinuteStock = new Stock("APPL", List.of(minutes));
+        var singleFifteenSecondsStock = new Stock("APPL", List.of(fifteenSeconds));
+        for (var i = 0; i < 200; i++) {
+            var trade = new Trade("APPL", time.plusNanos(i * 700_000_000L), new BigDecimal(i % 17));
+            stock.addTrade(trade);
+            singleMinuteStock.addTrade(trade);
+            singleFifteenSecondsStock.addTrade(trade);
+        }
+        stock.publish();
+        singleMinuteStock.publish();
+        singleFifteenSecondsStock.publish();
+
+        // when
+        var minuteCandles = stock.getCandles(minutes);
+        var fifteenSecondsCandles = stock.getCandles(fifteenSeconds);
+
+        // then
+        assertThat(minuteCandles).isEqualTo(singleMinuteStock.getCandles(minutes));
+        assertThat(fifteenSecondsCandles).isEqualTo(singleFifteenSecondsStock.getCandles(fifteenSeconds));
+        assertThat(minuteCandles).hasSize(3);
+    }
+
+    @Test
+    void should_close_candles_of_quiet_stock_at_bucket_end() {
+        // given
+        var seconds = new CandleSize(1, SECONDS);
+        var minutes = new CandleSize(1, MINUTES);
+        var stock = new Stock("APPL", List.of(seconds, minutes));
+        stock.addTrade(new Trade("APPL", time, price1));
+        stock.addTrade(new Trade("APPL", time.plusNanos(500_000_000), price2));
+
+        // when
+        var nextBucketEnd = stock.closeCandles(CandleStore.toEpochMillis(time.plusSeconds(1)));
+        stock.publish();
+        var secondCandles = stock.getCandles(seconds);
+        var minuteCandles = stock.getCandles(minutes);
+        var lastBucketEnd = stock.closeCandles(CandleStore.toEpochMillis(time.plusMinutes(1)));
+        stock.publish();
+        var closedMinuteCandles = stock.getCandles(minutes);
+
+        // then
+        var candle = new Candle(seconds, time, time.plusNanos(500_000_000), price1, price2, price1, price2);
+        assertThat(secondCandles).isEqualTo(List.of(candle));
+        assertThat(secondCandles.closedSize()).isEqualTo(1);
+        assertThat(minuteCandles).hasSize(1);
+        assertThat(minuteCandles.closedSize()).isEqualTo(0);
+        assertThat(closedMinuteCandles.closedSize()).isEqualTo(1);
+        assertThat(nextBucketEnd).isEqualTo(CandleStore.toEpochMillis(minutes.calculateAbsoluteEndDate(minutes.calculateAbsoluteStartDate(time))));
+        assertThat(lastBucketEnd).isEqualTo(Stock.NO_BUCKET);
+        assertThat(closedMinuteCandles.get(0)).isEqualTo(new Candle(minutes, time, time.plusNanos(500_000_000), price1, price2, price1, price2));
+    }
+
+    @Test
+    void should_not_show_trades_until_published() {
+        // given
+        var candleSize = new CandleSize(1, SECONDS);
+        var stock = new Stock("APPL", List.of(candleSize));
+        stock.addTrade(new Trade("APPL", time, price1));
+        stock.publish();
+        var published = stock.getCandles(candleSize);
+
+        // when
+        stock.addTrade(new Trade("APPL", time.plusSeconds(1), price2));
+        var result = stock.getCandles(candleSize);
+
+        // then
+        assertThat(result).isEqualTo(published);
+        assertThat(result).hasSize(1);
+    }
+
+    @Test
+    void should_fold_trade_of_closed_candle_into_the_next_one() {
+        // given
+        var candleSize = new CandleSize(1, SECONDS);
+        var stock = new Stock("APPL", List.of(candleSize));
+        var price3 = new BigDecimal(3);
+        stock.addTrade(new Trade("APPL", time, price1));
+        stock.closeCandles(CandleStore.toEpochMillis(time.plusSeconds(1)));
+
+        // when
+        var late = new Trade("APPL", time.plusNanos(500_000_000L), price3);
+        var isLate = stock.isLate(late);
+        var added = stock.addTrade(late);
+        var next = stock.addTrade(new Trade("APPL", time.plusSeconds(1), price2));
+        stock.publish();
+
+        // then
+        assertThat(isLate).isTrue();
+        assertThat(added).isFalse();
+        assertThat(next).isTrue();
+        assertThat(stock.getCandles(candleSize)).isEqualTo(List.of(
+            new Candle(candleSize, time, time, price1, price1, price1, price1),
+            new Candle(candleSize, time.plusSeconds(1), time.plusSeconds(1), price2, price3, price3, price2)));
+    }
+
+    @Test
+    void should_not_open_closed_bucket_of_coarser_candles_again() {
+        // given
+        var seconds = new CandleSize(1, SECONDS);
+        var minutes = new CandleSize(1, MINUTES);
+        var stock = new Stock("APPL", List.of(seconds, minutes));
+        var minute = minutes.calculateAbsoluteStartDate(time);
+        stock.addTrade(new Trade("APPL", minute.plusSeconds(30), price1));
+        stock.closeCandles(CandleStore.toEpochMillis(minute.plusSeconds(61)));
+
+        // when
+        var added = stock.addTrade(new Trade("APPL", minute.plusSeconds(45), price2));
+        stock.closeCandles(CandleStore.toEpochMillis(minute.plusMinutes(2)));
+        stock.publish();
+
+        // then
+        assertThat(added).isFalse();
+        assertThat(stock.getCandles(minutes)).isEqualTo(List.of(
+            new Candle(minutes, minute.plusSeconds(30), minute.plusSeconds(30), price1, price1, price1, price1),
+            new Candle(minutes, minute.plusSeconds(61), minute.plusSeconds(61), price2, price2, price2, price2)));
+    }
+}
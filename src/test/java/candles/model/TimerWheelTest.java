@@ -0,0 +1,60 @@
+package candles.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimerWheelTest {
+
+    @Test
+    void should_expire_tasks_only_when_their_deadline_comes() {
+        // given
+        var wheel = new TimerWheel<String>(100, 8, 0);
+        var expired = new ArrayList<String>();
+        wheel.schedule("soon", 250);
+        wheel.schedule("after revolution", 2_150);
+        wheel.schedule("past", -1_000);
+
+        // when
+        wheel.advance(199, expired::add);
+        var expiredFirst = List.copyOf(expired);
+        wheel.advance(300, expired::add);
+        var expiredSecond = List.copyOf(expired);
+        wheel.advance(2_000, expired::add);
+        var expiredThird = List.copyOf(expired);
+        wheel.advance(2_199, expired::add);
+
+        // then
+        assertThat(expiredFirst).isEqualTo(List.of("past"));
+        assertThat(expiredSecond).isEqualTo(List.of("past", "soon"));
+        assertThat(expiredThird).isEqualTo(List.of("past", "soon"));
+        assertThat(expired).isEqualTo(List.of("past", "soon", "after revolution"));
+    }
+
+    @Test
+    void should_expire_everything_due_after_long_pause() {
+        // given
+        var wheel = new TimerWheel<Integer>(10, 4, 0);
+        var expired = new ArrayList<Integer>();
+        for (var i = 0; i < 20; i++) {
+            wheel.schedule(i, i * 10);
+        }
+
+        // when
+        wheel.advance(155, expired::add);
+
+        // then
+        assertThat(expired).hasSize(16);
+        assertThat(expired.contains(15)).isTrue();
+        assertThat(expired.contains(16)).isFalse();
+    }
+
+    @Test
+    void should_not_be_able_to_create_wheel_with_bad_slots_amount() {
+        assertThatThrownBy(() -> new TimerWheel<String>(10, 6, 0)).hasMessage("tried to create inappropriate timer wheel with tick 10 and 6 slots");
+    }
+}
@@ -0,0 +1,105 @@
+package candles.persistence;
+
+import candles.model.Candle;
+import candles.model.CandleSize;
+import candles.model.CandleStore;
+import candles.model.Retention;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandleSegmentsTest {
+
+    private final CandleSize candleSize = new CandleSize(1, SECONDS);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_read_sealed_candles_back_from_segment_files() throws IOException {
+        // given
+        var segments = new CandleSegments(directory, Duration.ofMinutes(10), CandleSegments.SEGMENT_SIZE, Runnable::run);
+        var store = new CandleStore(candleSize, Retention.UNLIMITED, "BRK/A", segments);
+
+        // when
+        for (var i = 0; i < 3000; i++) {
+            store.add(candle(i));
+        }
+        var result = store.snapshot(null);
+
+        // then
+        assertThat(segmentFiles()).isEqualTo(1L);
+        assertThat(result).hasSize(3000);
+        for (var i = 0; i < 3000; i++) {
+            assertThat(result.get(i)).isEqualTo(candle(i));
+        }
+    }
+
+    @Test
+    void should_keep_candles_in_heap_until_they_are_sealed_in_background() throws IOException {
+        // given
+        var sealer = new ArrayDeque<Runnable>();
+        var segments = new CandleSegments(directory, Duration.ofMinutes(10), CandleSegments.SEGMENT_SIZE, sealer::add);
+        var store = new CandleStore(candleSize, Retention.UNLIMITED, "BRK/A", segments);
+        for (var i = 0; i < 2047; i++) {
+            store.add(candle(i));
+        }
+        var beforeSealing = store.snapshot(null);
+        var filesBeforeSealing = segmentFiles();
+
+        // when
+        sealer.poll().run();
+        store.add(candle(2047));
+        var afterSealing = store.snapshot(null);
+
+        // then
+        assertThat(filesBeforeSealing).isEqualTo(0L);
+        assertThat(segmentFiles()).isEqualTo(1L);
+        assertThat(afterSealing.heapBytes()).isLessThan(beforeSealing.heapBytes());
+        assertThat(beforeSealing).hasSize(2047);
+        assertThat(afterSealing).hasSize(2048);
+        for (var i = 0; i < 2048; i++) {
+            assertThat(afterSealing.get(i)).isEqualTo(candle(i));
+        }
+    }
+
+    @Test
+    void should_delete_segments_dropped_by_retention_and_previous_runs() throws IOException {
+        // given
+        var segments = new CandleSegments(directory, Duration.ofMinutes(1), 3 * (CandleSegments.HEADER_SIZE + CandleStore.COLUMNS * 1024 * Long.BYTES), Runnable::run);
+        var store = new CandleStore(candleSize, new Retention(Duration.ofHours(1), 0), "APPL", segments);
+        for (var i = 0; i < 10_000; i++) {
+            store.add(candle(i));
+        }
+        var segmentsBeforeRestart = segmentFiles();
+
+        // when
+        new CandleSegments(directory, Duration.ofMinutes(1));
+
+        // then
+        assertThat(segmentsBeforeRestart).isEqualTo(1L);
+        assertThat(segmentFiles()).isEqualTo(0L);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(CandleSegments.SUFFIX)).count();
+        }
+    }
+
+    private Candle candle(int i) {
+        var price = BigDecimal.valueOf(i, 2);
+        return new Candle(candleSize, time.plusSeconds(i), time.plusSeconds(i), price, price, price, price);
+    }
+}
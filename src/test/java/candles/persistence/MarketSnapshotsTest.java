@@ -0,0 +1,151 @@
+package candles.persistence;
+
+import candles.metrics.Metrics;
+import candles.model.CandleSeries;
+import candles.model.CandleSize;
+import candles.model.MarketManager;
+import candles.model.MarketSnapshot;
+import candles.model.Trade;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MarketSnapshotsTest {
+
+    private final CandleSize seconds = new CandleSize(1, SECONDS);
+    private final CandleSize minutes = new CandleSize(1, MINUTES);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_restore_market_state_taken_at_trade_sequence() throws Exception {
+        // given
+        var market = new MarketManager(List.of(seconds, minutes), 2);
+        market.start();
+        for (var i = 0; i < 500; i++) {
+            market.processMarketEvent(trade(i % 2 == 0 ? "APPL" : "MSFT", i));
+        }
+        var requested = market.requestSnapshot();
+        market.processMarketEvent(trade("APPL", 500));//marks the snapshot and is not included into it
+        var snapshot = requested.get(5, TimeUnit.SECONDS);
+        var snapshots = new MarketSnapshots(directory);
+        snapshots.write(snapshot);
+
+        // when
+        var restored = snapshots.readLatest().orElseThrow();
+        var restoredMarket = new MarketManager(List.of(seconds, minutes), 3);
+        restoredMarket.restore(restored);
+        restoredMarket.start();
+        var expected = new MarketManager(List.of(seconds, minutes), 1);
+        expected.start();
+        for (var i = 0; i < 500; i++) {
+            expected.processMarketEvent(trade(i % 2 == 0 ? "APPL" : "MSFT", i));
+        }
+
+        // then
+        assertThat(restored.sequence).isEqualTo(500L);
+        assertThat(restored.stocks).hasSize(2);
+        for (var stock : List.of("APPL", "MSFT")) {
+            var lastTradeTime = time.plusNanos((stock.equals("APPL") ? 498 : 499) * 300_000_000L);
+            for (var candleSize : List.of(seconds, minutes)) {
+                var expectedCandles = await(() -> expected.getCandles(stock, candleSize).filter(c -> c.size() > 0 && c.get(c.size() - 1).closeTime.equals(lastTradeTime)));
+                assertThat(restoredMarket.getCandles(stock, candleSize).orElseThrow()).isEqualTo(expectedCandles);
+            }
+        }
+    }
+
+    @Test
+    void should_keep_restored_candles_open_for_trades_replayed_after_snapshot() throws Exception {
+        // given
+        var market = new MarketManager(List.of(seconds, minutes), 1);
+        market.start();
+        for (var i = 0; i < 250; i++) {
+            market.processMarketEvent(trade("APPL", i));
+        }
+        var requested = market.requestSnapshot();
+        market.processMarketEvent(trade("APPL", 250));
+        var snapshot = requested.get(5, TimeUnit.SECONDS);
+        var metrics = new Metrics();
+        var restoredMarket = new MarketManager(List.of(seconds, minutes), 1);
+        restoredMarket.instrument(metrics);
+        restoredMarket.restore(snapshot);
+        restoredMarket.start();
+        for (var i = 251; i < 500; i++) {
+            market.processMarketEvent(trade("APPL", i));
+        }
+
+        // when
+        Thread.sleep(300);
+        for (var i = 250; i < 500; i++) {
+            restoredMarket.processMarketEvent(trade("APPL", i));
+        }
+
+        // then
+        var lastTradeTime = time.plusNanos(499 * 300_000_000L);
+        for (var candleSize : List.of(seconds, minutes)) {
+            var expectedCandles = await(() -> market.getCandles("APPL", candleSize).filter(c -> c.get(c.size() - 1).closeTime.equals(lastTradeTime)));
+            var restoredCandles = await(() -> restoredMarket.getCandles("APPL", candleSize).filter(c -> c.get(c.size() - 1).closeTime.equals(lastTradeTime)));
+            assertThat(restoredCandles).isEqualTo(expectedCandles);
+        }
+        assertThat(metrics.scrape()).contains("candles_shard_trades_late_total{shard=\"0\"} 0\n");
+        market.stop();
+        restoredMarket.stop();
+    }
+
+    @Test
+    void should_fall_back_to_the_previous_snapshot_if_the_latest_one_is_unreadable() throws Exception {
+        // given
+        var snapshots = new MarketSnapshots(directory);
+        snapshots.write(new MarketSnapshot(10, List.of()));
+        snapshots.write(new MarketSnapshot(20, List.of()));
+        snapshots.write(new MarketSnapshot(30, List.of()));
+        Files.write(directory.resolve(String.format("%020d%s", 30, MarketSnapshots.SUFFIX)), new byte[]{1, 2, 3});
+
+        // when
+        var restored = snapshots.readLatest();
+
+        // then
+        assertThat(restored.orElseThrow().sequence).isEqualTo(20L);
+        assertThat(snapshots.oldestSequence()).isEqualTo(20L);
+    }
+
+    @Test
+    void should_refuse_directory_locked_by_another_process() {
+        // given
+        new MarketSnapshots(directory).lock();
+
+        // when then
+        assertThatThrownBy(() -> new MarketSnapshots(directory).lock()).hasMessageContaining("locked by another process");
+    }
+
+    private Trade trade(String stockName, int i) {
+        return new Trade(stockName, time.plusNanos(i * 300_000_000L), new BigDecimal(i).movePointLeft(i % 3));
+    }
+
+    private static CandleSeries await(Supplier<Optional<CandleSeries>> candles) {
+        final var deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            final var result = candles.get();
+            if (result.isPresent()) {
+                return result.get();
+            }
+            Thread.onSpinWait();
+        }
+        throw new AssertionError("candles were not published in time");
+    }
+}
@@ -0,0 +1,152 @@
+package candles.persistence;
+
+import candles.metrics.Metrics;
+import candles.model.CandleSize;
+import candles.model.MarketManager;
+import candles.model.Stock;
+import candles.model.Trade;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+import static candles.model.ScaledPrices.decode;
+import static candles.model.ScaledPrices.encode;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TradeJournalTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_replay_appended_trades() {
+        // given
+        var journal = TradeJournal.open(directory, SEGMENT_SIZE, 10);
+        journal.append("APPL", 1_670_847_132_123L, encode(new BigDecimal("10.120")));
+        journal.append("MSFT", 1_670_847_132_124L, encode(new BigDecimal("-1.5")));
+        journal.append("APPL", 1_670_847_132_125L, encode(new BigDecimal("1E+3")));
+        journal.close();
+
+        // when
+        var replayed = new ArrayList<String>();
+        var next = TradeJournal.open(directory, SEGMENT_SIZE, 10).replay(0, (name, time, price) -> replayed.add(name + " " + time + " " + decode(price)));
+
+        // then
+        assertThat(replayed).isEqualTo(List.of("APPL 1670847132123 10.120", "MSFT 1670847132124 -1.5", "APPL 1670847132125 1000"));
+        assertThat(next).isEqualTo(3L);
+    }
+
+    @Test
+    void should_roll_segments_and_replay_from_sequence() {
+        // given
+        var journal = TradeJournal.open(directory, SEGMENT_SIZE, 10);
+        for (var i = 0; i < 10_000; i++) {
+            journal.append("S" + (i % 7), i, encode(new BigDecimal(i)));
+        }
+        journal.close();
+
+        // when
+        var prices = new ArrayList<Integer>();
+        var next = TradeJournal.open(directory, SEGMENT_SIZE, 10).replay(9_000, (name, time, price) -> prices.add(decode(price).intValue()));
+
+        // then
+        assertThat(TradeJournal.segments(directory).size()).isEqualTo(5);
+        assertThat(prices).hasSize(1000);
+        assertThat(prices.get(0)).isEqualTo(9_000);
+        assertThat(prices.get(999)).isEqualTo(9_999);
+        assertThat(next).isEqualTo(10_000L);
+    }
+
+    @Test
+    void should_continue_sequence_after_reopening() {
+        // given
+        var journal = TradeJournal.open(directory, SEGMENT_SIZE, 10);
+        journal.append("APPL", 1, encode(new BigDecimal(1)));
+        journal.append("APPL", 2, encode(new BigDecimal(2)));
+        journal.close();
+
+        // when
+        var reopened = TradeJournal.open(directory, SEGMENT_SIZE, 10);
+        reopened.append("APPL", 3, encode(new BigDecimal(3)));
+        reopened.close();
+        var times = new ArrayList<Long>();
+        TradeJournal.open(directory, SEGMENT_SIZE, 10).replay(0, (name, time, price) -> times.add(time));
+
+        // then
+        assertThat(reopened.sequence()).isEqualTo(3L);
+        assertThat(times).isEqualTo(List.of(1L, 2L, 3L));
+    }
+
+    @Test
+    void should_delete_segments_preceding_sequence() {
+        // given
+        var journal = TradeJournal.open(directory, SEGMENT_SIZE, 10);
+        for (var i = 0; i < 10_000; i++) {
+            journal.append("APPL", i, encode(new BigDecimal(i)));
+        }
+
+        // when
+        journal.truncate(7_000);
+        var times = new ArrayList<Long>();
+        var next = journal.replay(0, (name, time, price) -> times.add(time));
+
+        // then
+        assertThat(TradeJournal.segments(directory).size()).isEqualTo(2);
+        assertThat(times.get(0)).isLessThan(7_000L);
+        assertThat(times.get(times.size() - 1)).isEqualTo(9_999L);
+        assertThat(next).isEqualTo(10_000L);
+    }
+
+    @Test
+    void should_replay_trades_of_the_past_into_running_market_as_they_were_received() {
+        // given
+        var seconds = new CandleSize(1, SECONDS);
+        var minutes = new CandleSize(1, MINUTES);
+        var journal = TradeJournal.open(directory, SEGMENT_SIZE, 10);
+        var expected = new Stock("APPL", List.of(seconds, minutes));
+        for (var i = 0; i < 20_000; i++) {
+            var trade = new Trade("APPL", 1_670_847_132_000L + i * 10L, encode(new BigDecimal(i % 97)));
+            journal.append(trade.stockName, trade.timeMillis, trade.price);
+            expected.addTrade(trade);
+        }
+        journal.close();
+        expected.publish();
+        var metrics = new Metrics();
+        var market = new MarketManager(List.of(seconds, minutes), 1);
+        market.instrument(metrics);
+        market.start();
+
+        // when
+        var replayed = new AtomicInteger();
+        TradeJournal.open(directory, SEGMENT_SIZE, 10).replay(0, (name, time, price) -> {
+            market.processMarketEvent(name, time, price);
+            if (replayed.incrementAndGet() % 5_000 == 0) {
+                LockSupport.parkNanos(200_000_000);//a replay takes longer than a tick of the shard
+            }
+        });
+
+        // then
+        for (var candleSize : List.of(seconds, minutes)) {
+            var lastCandle = expected.getCandles(candleSize).get(expected.getCandles(candleSize).size() - 1);
+            var deadline = System.currentTimeMillis() + 5_000;
+            while (System.currentTimeMillis() < deadline
+                && !market.getCandles("APPL", candleSize).map(c -> c.get(c.size() - 1).equals(lastCandle)).orElse(false)) {
+                Thread.onSpinWait();
+            }
+            assertThat(market.getCandles("APPL", candleSize).orElseThrow()).isEqualTo(expected.getCandles(candleSize));
+        }
+        assertThat(metrics.scrape()).contains("candles_shard_trades_late_total{shard=\"0\"} 0\n");
+        market.stop();
+    }
+}
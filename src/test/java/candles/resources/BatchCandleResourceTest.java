@@ -0,0 +1,42 @@
+package candles.resources;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchCandleResourceTest {
+
+    @Test
+    void should_parse_distinct_stocks() {
+        // then
+        assertThat(BatchCandleResource.parseStocks("APPL, MSFT,,APPL ,AMZN")).isEqualTo(List.of("APPL", "MSFT", "AMZN"));
+        assertThat(BatchCandleResource.parseStocks(" , ")).isEmpty();
+        assertThat(BatchCandleResource.parseStocks(null)).isEmpty();
+    }
+
+    @Test
+    void should_report_stocks_failed_to_be_encoded_as_missing() throws Exception {
+        // given
+        var stocks = List.of("APPL", "MSFT", "AMZN", "TSLA");
+        var encoding = List.of(
+            CompletableFuture.completedFuture("{\"stockName\":\"APPL\"}".getBytes(UTF_8)),
+            CompletableFuture.<byte[]>failedFuture(new RuntimeException("unable to encode candles of MSFT")),
+            CompletableFuture.<byte[]>completedFuture(null),
+            CompletableFuture.completedFuture("{\"stockName\":\"TSLA\"}".getBytes(UTF_8)));
+
+        // when
+        var encoded = BatchCandleResource.join(stocks, encoding);
+        var out = new ByteArrayOutputStream();
+        BatchCandleResource.write(stocks, encoded, out);
+
+        // then
+        assertThat(Arrays.asList(encoded.get(1), encoded.get(2))).containsExactly(null, null);
+        assertThat(out.toString(UTF_8)).isEqualTo("{\"stocks\":[{\"stockName\":\"APPL\"},{\"stockName\":\"TSLA\"}],\"missing\":[\"MSFT\",\"AMZN\"]}");
+    }
+}
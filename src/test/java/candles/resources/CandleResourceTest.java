@@ -0,0 +1,46 @@
+package candles.resources;
+
+import candles.model.CandleQuery;
+import candles.model.CandleSize;
+import org.junit.jupiter.api.Test;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CandleResourceTest {
+
+    @Test
+    void should_parse_query_in_epoch_seconds() {
+        // when
+        var query = CandleResource.parseQuery("100", "200", "5", "150");
+
+        // then
+        assertThat(query).isEqualTo(new CandleQuery(150_000, 200_000, 5));
+        assertThat(CandleResource.parseQuery(null, null, null, null)).isSameAs(CandleQuery.ALL);
+    }
+
+    @Test
+    void should_reject_inappropriate_query_parameters() {
+        // then
+        assertThatThrownBy(() -> CandleResource.parseQuery("yesterday", null, null, null))
+            .isInstanceOf(BadRequestException.class).hasMessage("from has to be a number, got yesterday");
+        assertThatThrownBy(() -> CandleResource.parseQuery(null, "1.5", null, null)).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleResource.parseQuery(null, null, null, "")).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleResource.parseQuery(null, null, "0", null))
+            .isInstanceOf(BadRequestException.class).hasMessage("limit has to be positive, got 0");
+        assertThatThrownBy(() -> CandleResource.parseQuery(null, null, "99999999999", null)).isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void should_parse_candle_size() {
+        // then
+        assertThat(CandleResource.parseCandleSize("minutes", "5")).isEqualTo(new CandleSize(5, MINUTES));
+        assertThatThrownBy(() -> CandleResource.parseCandleSize("FORTNIGHTS", "1"))
+            .isInstanceOf(BadRequestException.class).hasMessage("unknown cu FORTNIGHTS");
+        assertThatThrownBy(() -> CandleResource.parseCandleSize("MINUTES", "7")).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleResource.parseCandleSize("MINUTES", "-5")).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleResource.parseCandleSize("DAYS", "1")).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleResource.parseCandleSize(null, "1")).isInstanceOf(BadRequestException.class);
+    }
+}
@@ -0,0 +1,53 @@
+package candles.resources;
+
+import candles.model.CandleSize;
+import candles.resources.stream.Topic;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CandleStreamResourceTest {
+
+    @Test
+    void should_parse_topics() {
+        // when
+        var topics = CandleStreamResource.parseTopics(new String[]{"DFE:5:SECONDS", "BRK:A:1:minutes"});
+
+        // then
+        assertThat(topics).isEqualTo(List.of(new Topic("DFE", new CandleSize(5, SECONDS)), new Topic("BRK:A", new CandleSize(1, MINUTES))));
+    }
+
+    @Test
+    void should_reject_inappropriate_topics() {
+        // then
+        assertThatThrownBy(() -> CandleStreamResource.parseTopics(null))
+            .isInstanceOf(BadRequestException.class).hasMessage("topic is required");
+        assertThatThrownBy(() -> CandleStreamResource.parseTopics(new String[]{"DFE"}))
+            .isInstanceOf(BadRequestException.class).hasMessage("topic has to be <stock>:<size>:<unit>, got DFE");
+        assertThatThrownBy(() -> CandleStreamResource.parseTopics(new String[]{":5:SECONDS"})).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleStreamResource.parseTopics(new String[]{"DFE:five:SECONDS"})).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CandleStreamResource.parseTopics(new String[]{"DFE:5:FORTNIGHTS"}))
+            .isInstanceOf(BadRequestException.class).hasMessage("inappropriate topic DFE:5:FORTNIGHTS: unknown cu FORTNIGHTS");
+        assertThatThrownBy(() -> CandleStreamResource.parseTopics(new String[]{"DFE:7:MINUTES"})).isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void should_limit_streaming_clients() {
+        // given
+        var resource = new CandleStreamResource(null, 2);
+
+        // when
+        var connected = List.of(resource.connect(), resource.connect(), resource.connect());
+        resource.disconnect();
+        var reconnected = resource.connect();
+
+        // then
+        assertThat(connected).isEqualTo(List.of(true, true, false));
+        assertThat(reconnected).isTrue();
+    }
+}
@@ -0,0 +1,75 @@
+package candles.resources;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpThreadsTest {
+
+    @Test
+    void should_create_pool_with_configured_limits() {
+        // when
+        var threads = (QueuedThreadPool) HttpThreads.pool(16, 2, 64, Duration.ofSeconds(30));
+
+        // then
+        assertThat(threads.getMaxThreads()).isEqualTo(16);
+        assertThat(threads.getMinThreads()).isEqualTo(2);
+        assertThat(threads.getIdleTimeout()).isEqualTo(30_000);
+        assertThatThrownBy(() -> HttpThreads.pool(1, 2, 64, Duration.ofSeconds(30)))
+            .hasMessage("tried to create inappropriate http pool of 2-1 threads and queue 64");
+        assertThatThrownBy(() -> HttpThreads.pool(16, 2, 0, Duration.ofSeconds(30))).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void should_reject_requests_over_pool_queue() throws Exception {
+        // given
+        var threads = (QueuedThreadPool) HttpThreads.pool(1, 1, 1, Duration.ofSeconds(30));
+        threads.start();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        try {
+            threads.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            started.await(5, SECONDS);
+
+            // when
+            threads.execute(() -> {
+            });
+
+            // then
+            assertThat(threads.getQueueSize()).isEqualTo(1);
+            assertThatThrownBy(() -> threads.execute(() -> {
+            })).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            release.countDown();
+            threads.stop();
+        }
+    }
+
+    @Test
+    void should_run_requests_on_virtual_threads() throws Exception {
+        // given
+        var threads = HttpThreads.virtual();
+        var virtual = new CompletableFuture<Boolean>();
+
+        // when
+        threads.execute(() -> virtual.complete(Thread.currentThread().isVirtual()));
+
+        // then
+        assertThat(virtual.get(5, SECONDS)).isEqualTo(true);
+    }
+}
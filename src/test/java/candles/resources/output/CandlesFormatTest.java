@@ -0,0 +1,78 @@
+package candles.resources.output;
+
+import candles.model.Candle;
+import candles.model.CandleSize;
+import candles.model.CandleStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandlesFormatTest {
+
+    private final CandleSize candleSize = new CandleSize(5, SECONDS);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 10);
+
+    @Test
+    void should_negotiate_the_most_preferred_supported_format() {
+        // then
+        assertThat(CandlesFormat.negotiate(null)).isEqualTo(Optional.of(CandlesFormat.JSON));
+        assertThat(CandlesFormat.negotiate("*/*")).isEqualTo(Optional.of(CandlesFormat.JSON));
+        assertThat(CandlesFormat.negotiate("application/cbor")).isEqualTo(Optional.of(CandlesFormat.CBOR));
+        assertThat(CandlesFormat.negotiate("application/json;q=0.5, application/vnd.candles.columns+json"))
+            .isEqualTo(Optional.of(CandlesFormat.COLUMNS_JSON));
+        assertThat(CandlesFormat.negotiate("text/html, application/vnd.candles.columns+cbor;q=0.9, */*;q=0.1"))
+            .isEqualTo(Optional.of(CandlesFormat.COLUMNS_CBOR));
+        assertThat(CandlesFormat.negotiate("application/cbor;q=0, text/html")).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void should_write_candles_as_columns() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        store.add(candle(0, "1.5"));
+        var candles = store.snapshot(candle(1, "-0.25"));
+        var out = new ByteArrayOutputStream();
+
+        // when
+        CandlesFormat.COLUMNS_JSON.write(candles, "s", out);
+
+        // then
+        assertThat(out.toString(UTF_8)).isEqualTo("{\"stockName\":\"s\",\"candleSize\":5,\"candleChronoUnit\":\"SECONDS\",\"closedCandles\":1," +
+            "\"openTime\":[1670847130,1670847135],\"closeTime\":[1670847131,1670847136]," +
+            "\"minPrice\":[1.5,-0.25],\"maxPrice\":[1.5,-0.25],\"openPrice\":[1.5,-0.25],\"closePrice\":[1.5,-0.25]}");
+    }
+
+    @Test
+    void should_write_the_same_candles_in_cbor() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        store.add(candle(0, "1.5"));
+        var candles = store.snapshot(candle(1, "123456789.123456789"));
+        var out = new ByteArrayOutputStream();
+
+        // when
+        CandlesFormat.CBOR.write(candles, "s", out);
+        var tree = new ObjectMapper(new CBORFactory()).enable(USE_BIG_DECIMAL_FOR_FLOATS).readTree(out.toByteArray());
+
+        // then
+        assertThat(tree.get("candles").size()).isEqualTo(2);
+        assertThat(tree.get("candles").get(0).get("openTime").asText()).isEqualTo("1670847130");
+        assertThat(tree.get("candles").get(1).get("closePrice").decimalValue()).isEqualTo(new BigDecimal("123456789.123456789"));
+        assertThat(tree.get("stockName").asText()).isEqualTo("s");
+    }
+
+    private Candle candle(int index, String price) {
+        var value = new BigDecimal(price);
+        return new Candle(candleSize, time.plusSeconds(5L * index), time.plusSeconds(5L * index + 1), value, value, value, value);
+    }
+}
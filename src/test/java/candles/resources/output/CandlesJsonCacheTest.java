@@ -0,0 +1,179 @@
+package candles.resources.output;
+
+import candles.Application;
+import candles.model.Candle;
+import candles.model.CandleQuery;
+import candles.model.CandleSeries;
+import candles.model.CandleSize;
+import candles.model.CandleStore;
+import candles.model.Retention;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.LocalDateTime.of;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandlesJsonCacheTest {
+
+    private final CandleSize candleSize = new CandleSize(5, SECONDS);
+    private final LocalDateTime time = of(2022, 12, 12, 12, 12, 10);
+
+    @Test
+    void should_write_the_same_json_as_candles_json_writer() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        store.add(new Candle(candleSize, time, time.plusSeconds(3),
+            new BigDecimal("0.005"), new BigDecimal("10.120"), new BigDecimal("-1.5"), new BigDecimal("1E+3")));
+        store.add(candle(1));
+        var cache = new CandlesJsonCache(CandlesJsonCache.DEFAULT_BUDGET_BYTES);
+
+        // then
+        for (var candles : new CandleSeries[]{store.snapshot(null), store.snapshot(candle(2)), new CandleStore(candleSize).snapshot(candle(0))}) {
+            assertThat(written(cache, candles, "s\"1")).isEqualTo(expected(candles, "s\"1"));
+        }
+    }
+
+    @Test
+    void should_extend_cached_candles_by_closed_ones() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        var cache = new CandlesJsonCache(CandlesJsonCache.DEFAULT_BUDGET_BYTES);
+        store.add(candle(0));
+        written(cache, store.snapshot(candle(1)), "s");
+
+        // when
+        store.add(candle(1));
+        store.add(candle(2));
+        var candles = store.snapshot(candle(3));
+
+        // then
+        assertThat(written(cache, candles, "s")).isEqualTo(expected(candles, "s"));
+    }
+
+    @Test
+    void should_write_selected_candles_from_cached_ones() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        var cache = new CandlesJsonCache(CandlesJsonCache.DEFAULT_BUDGET_BYTES);
+        for (var i = 0; i < 10; i++) {
+            store.add(candle(i));
+        }
+        var all = store.snapshot(candle(10));
+        written(cache, all, "s");
+
+        // when
+        var selected = all.select(new CandleQuery(Long.MIN_VALUE, Long.MAX_VALUE, 3));
+        var range = store.snapshot(null).select(new CandleQuery(millis(2), millis(5), Integer.MAX_VALUE));
+
+        // then
+        assertThat(written(cache, selected, "s")).isEqualTo(expected(selected, "s"));
+        assertThat(written(cache, range, "s")).isEqualTo(expected(range, "s"));
+        assertThat(written(cache, all, "s")).isEqualTo(expected(all, "s"));
+    }
+
+    @Test
+    void should_evict_least_recently_used_candles_over_budget() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        for (var i = 0; i < 100; i++) {
+            store.add(candle(i));
+        }
+        var candles = store.snapshot(null);
+        var cache = new CandlesJsonCache(20_000);
+
+        // when
+        for (var i = 0; i < 10; i++) {
+            written(cache, candles, "s" + i);
+        }
+
+        // then
+        assertThat(cache.usedBytes()).isLessThanOrEqualTo(20_000L);
+        assertThat(written(cache, candles, "s0")).isEqualTo(expected(candles, "s0"));
+    }
+
+    @Test
+    void should_not_cache_candles_taking_more_than_budget() throws Exception {
+        // given
+        var store = new CandleStore(candleSize);
+        for (var i = 0; i < 100; i++) {
+            store.add(candle(i));
+        }
+        var small = new CandleStore(candleSize);
+        small.add(candle(0));
+        var cache = new CandlesJsonCache(2_000);
+        written(cache, small.snapshot(null), "t");
+        var usedBytes = cache.usedBytes();
+
+        // when
+        var first = written(cache, store.snapshot(null), "s");
+        var second = written(cache, store.snapshot(null), "s");
+
+        // then
+        assertThat(usedBytes).isGreaterThan(0L);
+        assertThat(cache.usedBytes()).isEqualTo(usedBytes);
+        assertThat(first).isEqualTo(expected(store.snapshot(null), "s"));
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    void should_drop_encoded_candles_dropped_by_retention() throws Exception {
+        // given
+        var store = new CandleStore(candleSize, new Retention(Duration.ZERO, 10));
+        var cache = new CandlesJsonCache(CandlesJsonCache.DEFAULT_BUDGET_BYTES);
+
+        // when
+        for (var i = 0; i < 1000; i++) {
+            store.add(candle(i));
+            written(cache, store.snapshot(null), "s");
+        }
+
+        // then
+        assertThat(cache.usedBytes()).isLessThan(4096L);
+        assertThat(written(cache, store.snapshot(null), "s")).isEqualTo(expected(store.snapshot(null), "s"));
+    }
+
+    @Test
+    void should_change_etag_only_when_candles_change() {
+        // given
+        var store = new CandleStore(candleSize);
+        store.add(candle(0));
+
+        // when
+        var etag = CandlesJsonCache.etag(store.snapshot(candle(1)), "s");
+
+        // then
+        assertThat(CandlesJsonCache.etag(store.snapshot(candle(1)), "s")).isEqualTo(etag);
+        assertThat(CandlesJsonCache.etag(store.snapshot(candle(2)), "s")).isNotEqualTo(etag);
+        assertThat(CandlesJsonCache.etag(store.snapshot(candle(1)), "t")).isNotEqualTo(etag);
+        store.add(candle(1));
+        assertThat(CandlesJsonCache.etag(store.snapshot(null), "s")).isNotEqualTo(etag);
+    }
+
+    private Candle candle(int index) {
+        var price = new BigDecimal(index).add(new BigDecimal("0.25"));
+        return new Candle(candleSize, time.plusSeconds(5L * index), time.plusSeconds(5L * index + 1), price, price, price, price);
+    }
+
+    private long millis(int index) {
+        return time.plusSeconds(5L * index).toInstant(Application.DEFAULT_TIME_ZONE_OFFSET).toEpochMilli();
+    }
+
+    private static String written(CandlesJsonCache cache, CandleSeries candles, String stockName) throws IOException {
+        var out = new ByteArrayOutputStream();
+        cache.write(candles, stockName, out);
+        return out.toString(UTF_8);
+    }
+
+    private static String expected(CandleSeries candles, String stockName) throws IOException {
+        var out = new ByteArrayOutputStream();
+        CandlesJsonWriter.write(candles, stockName, out);
+        return out.toString(UTF_8);
+    }
+}
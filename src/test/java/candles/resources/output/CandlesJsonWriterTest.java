@@ -0,0 +1,53 @@
+package candles.resources.output;
+
+import candles.model.Candle;
+import candles.model.CandleSize;
+import candles.model.CandleStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+
+import static candles.Application.OBJECT_MAPPER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.LocalDateTime.of;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandlesJsonWriterTest {
+
+    @Test
+    void should_write_the_same_json_as_json_candles() throws Exception {
+        // given
+        var candleSize = new CandleSize(5, SECONDS);
+        var time = of(2022, 12, 12, 12, 12, 12, 999_000_000);
+        var store = new CandleStore(candleSize);
+        store.add(new Candle(candleSize, time, time.plusSeconds(3),
+            new BigDecimal("0.005"), new BigDecimal("10.120"), new BigDecimal("-1.5"), new BigDecimal("1E+3")));
+        store.add(new Candle(candleSize, time.plusSeconds(5), time.plusSeconds(5),
+            new BigDecimal("-0.05"), new BigDecimal("123456789.123456789"), BigDecimal.ZERO, new BigDecimal("7")));
+        var liveCandle = new Candle(candleSize, time.plusSeconds(10), time.plusSeconds(11),
+            new BigDecimal("10.123"), new BigDecimal("10.123"), new BigDecimal("10.123"), new BigDecimal("10.123"));
+        var candles = store.snapshot(liveCandle);
+        var out = new ByteArrayOutputStream();
+
+        // when
+        CandlesJsonWriter.write(candles, "s", out);
+
+        //then
+        assertThat(out.toString(UTF_8)).isEqualTo(OBJECT_MAPPER.writeValueAsString(new JsonCandles(candles, candleSize, "s")));
+    }
+
+    @Test
+    void should_write_empty_candles() throws Exception {
+        // given
+        var candleSize = new CandleSize(5, SECONDS);
+        var out = new ByteArrayOutputStream();
+
+        // when
+        CandlesJsonWriter.write(new CandleStore(candleSize).snapshot(null), "s", out);
+
+        //then
+        assertThat(out.toString(UTF_8)).isEqualTo("{\"candles\":[],\"candleSize\":5,\"candleChronoUnit\":\"SECONDS\",\"stockName\":\"s\"}");
+    }
+}
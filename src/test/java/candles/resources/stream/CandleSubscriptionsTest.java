@@ -0,0 +1,123 @@
+package candles.resources.stream;
+
+import candles.model.CandleSize;
+import candles.model.MarketManager;
+import candles.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandleSubscriptionsTest {
+
+    private final CandleSize candleSize = new CandleSize(1, SECONDS);
+    private final LocalDateTime time = LocalDateTime.of(2022, 12, 12, 12, 12, 12);
+
+    @Test
+    void should_send_conflated_live_candle_and_closed_candles() throws Exception {
+        // given
+        var market = startedMarket();
+        var subscriptions = new CandleSubscriptions(market, Duration.ofSeconds(1), 16);
+        var subscriber = subscriptions.subscribe(List.of(new Topic("APPL", candleSize)));
+
+        // when
+        trade(market, 0, 1);
+        trade(market, 100, 2);
+        await(() -> closePrice(market) == 2);
+        subscriptions.dispatch();
+        var live = events(subscriber);
+        trade(market, 1000, 3);
+        await(() -> closePrice(market) == 3);
+        subscriptions.dispatch();
+        var closed = events(subscriber);
+
+        // then
+        assertThat(live).hasSize(1);
+        assertThat(live.get(0)).startsWith("event: live\ndata: {\"candles\":[{\"openTime\":\"1670847132\"");
+        assertThat(live.get(0)).contains("\"closePrice\":2}]");
+        assertThat(closed).hasSize(2);
+        assertThat(closed.get(0)).startsWith("event: closed\ndata: {\"candles\":[{\"openTime\":\"1670847132\"");
+        assertThat(closed.get(1)).startsWith("event: live\ndata: {\"candles\":[{\"openTime\":\"1670847133\"");
+    }
+
+    @Test
+    void should_overflow_subscriber_falling_behind() throws Exception {
+        // given
+        var market = startedMarket();
+        var subscriptions = new CandleSubscriptions(market, Duration.ofSeconds(1), 1);
+        var subscriber = subscriptions.subscribe(List.of(new Topic("APPL", candleSize)));
+
+        // when
+        for (var second = 0; second < 3; second++) {
+            var price = second + 1;
+            trade(market, second * 1000L, price);
+            await(() -> closePrice(market) == price);
+            subscriptions.dispatch();
+        }
+
+        // then
+        assertThat(subscriber.take(0)).isNull();
+    }
+
+    @Test
+    void should_start_new_subscriber_with_live_candle() throws Exception {
+        // given
+        var market = startedMarket();
+        var subscriptions = new CandleSubscriptions(market, Duration.ofSeconds(1), 16);
+        var topic = new Topic("APPL", candleSize);
+        subscriptions.subscribe(List.of(topic));
+        trade(market, 0, 1);
+        await(() -> closePrice(market) == 1);
+        subscriptions.dispatch();
+
+        // when
+        var subscriber = subscriptions.subscribe(List.of(topic));
+
+        // then
+        assertThat(events(subscriber)).hasSize(1);
+    }
+
+    private MarketManager startedMarket() {
+        var market = new MarketManager(List.of(candleSize), 1);
+        market.start();
+        return market;
+    }
+
+    private void trade(MarketManager market, long millis, int price) {
+        market.processMarketEvent(new Trade("APPL", time.plusNanos(millis * 1_000_000), new BigDecimal(price)));
+    }
+
+    private int closePrice(MarketManager market) {
+        return market.getCandles("APPL", candleSize)
+            .filter(c -> !c.isEmpty())
+            .map(c -> c.get(c.size() - 1).closePrice.intValue())
+            .orElse(0);
+    }
+
+    private static List<String> events(Subscriber subscriber) throws InterruptedException {
+        var events = new ArrayList<String>();
+        for (var event : subscriber.take(0)) {
+            events.add(new String(event, UTF_8));
+        }
+        return events;
+    }
+
+    // candles are published by shard writers asynchronously
+    private static void await(BooleanSupplier condition) {
+        final var deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("candles were not published in time");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}